@@ -0,0 +1,23 @@
+import bench.Workload;
+
+/**
+ * Moves every asteroid in the field one tick with AsteroidField.step() and checks both ships against them.
+ */
+public class AsteroidStepWorkload implements Workload {
+
+    private AsteroidField field; // asteroids to move
+    private Ship[] ships; // ships to check
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        GameState state = new GameState(800, 600, asteroids, seed);
+        this.field = state.getAsteroids();
+        this.ships = new Ship[] { state.getLeftShip(), state.getRightShip() };
+    }
+
+    @Override
+    public int run() {
+        return this.field.step(this.ships);
+    }
+
+}
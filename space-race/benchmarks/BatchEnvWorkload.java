@@ -0,0 +1,30 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import bench.Workload;
+
+/**
+ * Steps a BatchEnv of 64 matches once on the common ForkJoinPool with every ship flying up, writing every observation.
+ * Big fields get fewer matches, so no more than a million asteroids are held in total.
+ */
+public class BatchEnvWorkload implements Workload {
+
+    private BatchEnv env; // matches being stepped
+    private int[] actions; // both ships of every match flying up
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        int matches = Math.max(1, Math.min(64, 1000000 / Math.max(1, asteroids)));
+        this.env = new BatchEnv(matches, asteroids, seed);
+        this.env.setPool(ForkJoinPool.commonPool());
+        this.actions = new int[matches];
+        Arrays.fill(this.actions, 0b0101);
+    }
+
+    @Override
+    public int run() {
+        this.env.step(this.actions);
+        return Float.floatToRawIntBits(this.env.getObservations().get(1));
+    }
+
+}
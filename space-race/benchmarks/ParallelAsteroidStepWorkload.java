@@ -0,0 +1,26 @@
+import java.util.concurrent.ForkJoinPool;
+
+import bench.Workload;
+
+/**
+ * Moves every asteroid in the field one tick with ParallelAsteroidStep on the common ForkJoinPool and checks both
+ * ships against them, for comparison with AsteroidStepWorkload.
+ */
+public class ParallelAsteroidStepWorkload implements Workload {
+
+    private ParallelAsteroidStep step; // splits the field across the pool's threads
+    private Ship[] ships; // ships to check
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        GameState state = new GameState(800, 600, asteroids, seed);
+        this.step = new ParallelAsteroidStep(state.getAsteroids(), ForkJoinPool.commonPool());
+        this.ships = new Ship[] { state.getLeftShip(), state.getRightShip() };
+    }
+
+    @Override
+    public int run() {
+        return this.step.step(this.ships);
+    }
+
+}
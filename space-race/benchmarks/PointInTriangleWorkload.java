@@ -0,0 +1,42 @@
+import bench.Workload;
+
+/**
+ * Checks every asteroid in the field against the left ship's triangle with the integer Ship.pointInTriangle, with
+ * the positions already copied into plain arrays.
+ */
+public class PointInTriangleWorkload implements Workload {
+
+    private int[] xs; // x positions of the asteroids
+    private int[] ys; // y positions of the asteroids
+    private int shipX; // x position of the ship
+    private int shipY; // y position of the ship
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        GameState state = new GameState(800, 600, asteroids, seed);
+        AsteroidField field = state.getAsteroids();
+        this.xs = new int[field.size()];
+        this.ys = new int[field.size()];
+        for (int i = 0; i < field.size(); i++) {
+            this.xs[i] = field.getX(i);
+            this.ys[i] = field.getY(i);
+        }
+        this.shipX = state.getLeftShip().getX();
+        this.shipY = state.getLeftShip().getY();
+    }
+
+    @Override
+    public int run() {
+        int hits = 0;
+        for (int i = 0; i < this.xs.length; i++) {
+            if (Ship.pointInTriangle(this.xs[i], this.ys[i],
+                    this.shipX - Ship.HALF_WIDTH, this.shipY + Ship.BASE_OFFSET,
+                    this.shipX + Ship.HALF_WIDTH, this.shipY + Ship.BASE_OFFSET,
+                    this.shipX, this.shipY - Ship.NOSE_OFFSET)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+}
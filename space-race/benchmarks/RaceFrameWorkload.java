@@ -0,0 +1,44 @@
+import bench.Workload;
+import processing.awt.PGraphicsJava2D;
+
+/**
+ * Runs one whole Race frame: a tick of the match followed by drawing it with Race.drawGame(). Race draws into an
+ * offscreen Java2D buffer instead of a window, so this runs on machines without a display. A rematch is started
+ * whenever the timer runs out.
+ */
+public class RaceFrameWorkload implements Workload {
+
+    private String[] args; // command line arguments Race is set up with
+    private Race race; // the sketch drawing the match
+    private PGraphicsJava2D graphics; // offscreen buffer Race draws into
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        this.args = new String[] { "--asteroids", Integer.toString(asteroids), "--seed", Long.toString(seed),
+                "--mute" };
+        this.race = new Race();
+        this.race.sketchPath(); // resolves file paths against the working directory, as PApplet.main() would
+        this.graphics = new PGraphicsJava2D();
+        this.graphics.setParent(this.race);
+        this.graphics.setPrimary(false);
+        this.graphics.setSize(800, 600);
+        this.race.g = this.graphics;
+        this.race.width = 800;
+        this.race.height = 600;
+        this.race.args = this.args;
+        this.race.setup();
+    }
+
+    @Override
+    public int run() {
+        if (this.race.getState().isOver()) {
+            this.race.rematch();
+        }
+        this.race.getState().tick();
+        this.graphics.beginDraw();
+        this.race.drawGame(0);
+        this.graphics.endDraw();
+        return this.race.getState().getAsteroids().getX(0);
+    }
+
+}
@@ -0,0 +1,34 @@
+import bench.Workload;
+
+/**
+ * Rewinds a match by NetSession.MAX_ROLLBACK ticks with a SnapshotRing and simulates every one of those ticks again,
+ * saving a snapshot before each, which is the most work a late input from the peer can cause in one frame.
+ */
+public class RollbackWorkload implements Workload {
+
+    private GameState state; // match being rewound
+    private SnapshotRing ring; // snapshots of the last ticks of the match
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        this.state = new GameState(800, 600, asteroids, seed);
+        this.ring = new SnapshotRing(this.state, NetSession.MAX_ROLLBACK);
+        for (int t = 0; t < NetSession.MAX_ROLLBACK; t++) {
+            this.ring.save(this.state);
+            this.state.tick();
+        }
+    }
+
+    @Override
+    public int run() {
+        long end = this.state.getTickCount();
+        this.ring.restore(this.state, end - NetSession.MAX_ROLLBACK);
+        while (this.state.getTickCount() < end) {
+            this.state.setInputMask(1 | 1 << 2);
+            this.ring.save(this.state);
+            this.state.tick();
+        }
+        return this.state.getLeftShip().getY();
+    }
+
+}
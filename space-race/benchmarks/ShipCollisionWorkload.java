@@ -0,0 +1,29 @@
+import bench.Workload;
+
+/**
+ * Checks every asteroid in the field against the left ship with the allocation-free Ship.collision(int, int).
+ */
+public class ShipCollisionWorkload implements Workload {
+
+    private Ship ship; // ship to check against
+    private AsteroidField field; // asteroids to check
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        GameState state = new GameState(800, 600, asteroids, seed);
+        this.ship = state.getLeftShip();
+        this.field = state.getAsteroids();
+    }
+
+    @Override
+    public int run() {
+        int hits = 0;
+        for (int i = 0; i < this.field.size(); i++) {
+            if (this.ship.collision(this.field.getX(i), this.field.getY(i))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+}
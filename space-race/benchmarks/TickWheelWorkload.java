@@ -0,0 +1,35 @@
+import bench.Workload;
+
+/**
+ * Advances a TickWheel by one tick while as many events are waiting on it as there are asteroids, spread over the next
+ * few seconds. Each event that fires is scheduled again, so the number waiting never changes, and the time per tick
+ * should stay flat from 30 events to a million.
+ */
+public class TickWheelWorkload implements Workload {
+
+    private static final int SPREAD = 10 * GameState.TICKS_PER_SECOND; // events are due up to this many ticks ahead
+
+    private TickWheel wheel; // wheel being advanced
+    private TickWheel.Handler handler; // schedules each event again when it fires
+    private int fired; // number of events fired so far
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        Rng rng = new Rng(seed);
+        this.wheel = new TickWheel(asteroids);
+        for (int i = 0; i < asteroids; i++) {
+            this.wheel.schedule(1 + (long) (rng.nextDouble() * SPREAD), 0, i);
+        }
+        this.handler = (kind, arg) -> {
+            this.fired++;
+            this.wheel.schedule(SPREAD, kind, arg);
+        };
+    }
+
+    @Override
+    public int run() {
+        this.wheel.advance(this.handler);
+        return this.fired;
+    }
+
+}
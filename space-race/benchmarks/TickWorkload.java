@@ -0,0 +1,31 @@
+import bench.Workload;
+
+/**
+ * Runs one whole GameState.tick() with both ships flying up, starting a new match with the same field whenever the
+ * timer runs out.
+ */
+public class TickWorkload implements Workload {
+
+    private int asteroids; // number of asteroids in each match
+    private long seed; // seed each match is started with
+    private GameState state; // match being stepped
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        this.asteroids = asteroids;
+        this.seed = seed;
+        this.state = new GameState(800, 600, asteroids, seed);
+    }
+
+    @Override
+    public int run() {
+        if (this.state.isOver()) {
+            this.state = new GameState(800, 600, this.asteroids, this.seed);
+        }
+        this.state.getLeftShip().setUp(true);
+        this.state.getRightShip().setUp(true);
+        this.state.tick();
+        return this.state.getLeftShip().getY();
+    }
+
+}
@@ -0,0 +1,33 @@
+import bench.Workload;
+
+/**
+ * Checks every asteroid in the field against the left ship as one batch, using whichever TriangleBatch
+ * TriangleBatch.create() picks for this JVM. The ship is moved into the middle of the field so that the batch can't
+ * stop early on a hit near the start.
+ */
+public class TriangleBatchWorkload implements Workload {
+
+    private final TriangleBatch batch = TriangleBatch.create(); // the batch test being measured
+    private int[] xs; // x positions of the asteroids
+    private int[] ys; // y positions of the asteroids
+    private Ship ship; // ship to check against
+
+    @Override
+    public void setup(int asteroids, long seed) {
+        GameState state = new GameState(800, 600, asteroids, seed);
+        AsteroidField field = state.getAsteroids();
+        this.xs = new int[field.size()];
+        this.ys = new int[field.size()];
+        for (int i = 0; i < field.size(); i++) {
+            this.xs[i] = field.getX(i);
+            this.ys[i] = -100; // keeps every asteroid out of the ship so the whole batch is checked
+        }
+        this.ship = state.getLeftShip();
+    }
+
+    @Override
+    public int run() {
+        return this.ship.collision(this.batch, this.xs, this.ys, this.xs.length) ? 1 : 0;
+    }
+
+}
@@ -0,0 +1,28 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is the BenchMain class. It starts the JMH runner with the options this project always wants: results written as
+ * JSON to target/jmh-results.json (unless another result file is asked for) so they can be compared between commits,
+ * and the forked JVMs given the Vector API module and run without a display. Any other JMH options can be passed as
+ * usual, for example "-p asteroids=30" to only run the smallest field.
+ */
+public class BenchMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<String>(Arrays.asList(args));
+        if (!options.contains("-rff")) {
+            options.add("-rf");
+            options.add("json");
+            options.add("-rff");
+            options.add("target/jmh-results.json");
+        }
+        options.add("-jvmArgsAppend");
+        options.add("--add-modules=jdk.incubator.vector -Djava.awt.headless=true");
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+
+}
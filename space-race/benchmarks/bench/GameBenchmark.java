@@ -0,0 +1,64 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This is the GameBenchmark class. It times every workload in the default package against asteroid fields from the
+ * original 30 asteroids up to a million, reporting the average time for one run of each.
+ *
+ * <ul>
+ *   <li>ShipCollisionPointWorkload: Ship.collision(Point), allocating a Point, for every asteroid</li>
+ *   <li>ShipCollisionWorkload: the allocation-free Ship.collision(int, int) for every asteroid</li>
+ *   <li>PointInTriangleWorkload: Ship.pointInTriangle on ints for every asteroid</li>
+ *   <li>TriangleBatchWorkload: one batched check of every asteroid against a ship</li>
+ *   <li>AsteroidStepWorkload: AsteroidField.step(), moving every asteroid and checking both ships</li>
+ *   <li>ParallelAsteroidStepWorkload: the same step split across the common ForkJoinPool</li>
+ *   <li>TickWheelWorkload: one tick of a TickWheel with as many events waiting as there are asteroids</li>
+ *   <li>TickWorkload: one whole GameState.tick()</li>
+ *   <li>RollbackWorkload: rewinding NetSession.MAX_ROLLBACK ticks and simulating them all again</li>
+ *   <li>RaceFrameWorkload: one tick plus drawing the frame with Race into an offscreen buffer</li>
+ *   <li>BatchEnvWorkload: one step of up to 64 matches at once with BatchEnv, observations included</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+    @Param({ "ShipCollisionPointWorkload", "ShipCollisionWorkload", "PointInTriangleWorkload", "TriangleBatchWorkload",
+            "AsteroidStepWorkload", "ParallelAsteroidStepWorkload", "TickWheelWorkload", "TickWorkload",
+            "RollbackWorkload", "RaceFrameWorkload", "BatchEnvWorkload" })
+    public String workload; // simple name of the workload class to run
+
+    @Param({ "30", "1000", "10000", "100000", "1000000" })
+    public int asteroids; // number of asteroids in the field
+
+    private Workload instance; // the workload being timed
+
+    @Setup
+    public void setup() {
+        this.instance = Workload.load(this.workload);
+        this.instance.setup(this.asteroids, 1);
+    }
+
+    @Benchmark
+    public int run() {
+        return this.instance.run();
+    }
+
+}
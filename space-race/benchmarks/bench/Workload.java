@@ -0,0 +1,37 @@
+package bench;
+
+/**
+ * This is the Workload interface. Each workload sets up one piece of the game and runs one operation on it, so that
+ * GameBenchmark can time it. JMH can't generate code for benchmarks in the default package, which is where all of the
+ * game's classes are, so the benchmark itself lives in this package and the workloads live in the default package
+ * next to the code they exercise, loaded by name. JMH runs each workload in its own JVM, so the call through this
+ * interface only ever sees one implementation and is inlined.
+ */
+public interface Workload {
+
+    /**
+     * Builds everything the workload needs, outside of the timed section
+     * @param asteroids number of asteroids in the field
+     * @param seed seed for the field's random positions
+     */
+    void setup(int asteroids, long seed);
+
+    /**
+     * Runs the operation being measured once
+     * @return a value derived from the result, so the JIT can't throw the work away
+     */
+    int run();
+
+    /**
+     * @param name simple name of a class in the default package implementing Workload
+     * @return a new instance of that class
+     */
+    static Workload load(String name) {
+        try {
+            return (Workload) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("No workload named " + name, e);
+        }
+    }
+
+}
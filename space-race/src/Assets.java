@@ -0,0 +1,126 @@
+import processing.core.PApplet;
+import processing.core.PFont;
+import processing.core.PImage;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * This is the Assets class. It is a cache of every image, font and sound the game uses, shared by the whole process,
+ * so each file is decoded once however many times it is asked for, and a rematch (or a second Race in the same JVM)
+ * doesn't load anything again. preload() starts loading everything on background threads as soon as the sketch is set
+ * up, so the animation thread never waits on a file: it checks isLoaded() each frame until everything is ready. Sounds
+ * are decoded all the way to PcmSound samples while loading, so playing one never decodes anything.
+ *
+ * Asking for an asset that hasn't finished loading waits for it, and asking for one that was never preloaded loads it
+ * on the spot, so the cache can also be used by code that doesn't care about blocking, like benchmarks.
+ */
+public class Assets {
+
+    public static final String SHIP_IMAGE = "images/spaceship_green.png"; // image drawn for both ships
+    public static final String THUMP_SOUND = "sounds/thump.aiff"; // sound of a ship being hit
+    public static final String VIBRAPHONE_SOUND = "sounds/vibraphon.mp3"; // sound of a ship scoring
+    public static final String TEXT_FONT = "Arial"; // font of the scores and end of game message
+    public static final String PROFILE_FONT = "Monospaced"; // font of the profiler overlay
+    public static final int SCORE_SIZE = 40; // size of the score text
+    public static final int END_SIZE = 60; // size of the end of game message
+    public static final int PROFILE_SIZE = 12; // size of the profiler overlay text
+
+    private static final ExecutorService LOADER = Executors.newFixedThreadPool(2, task -> {
+        Thread thread = new Thread(task, "asset-loader");
+        thread.setDaemon(true); // loading never keeps the game from quitting
+        return thread;
+    }); // threads assets are loaded on
+
+    // every asset asked for, by kind and name
+    private static final ConcurrentHashMap<String, CompletableFuture<?>> CACHE = new ConcurrentHashMap<>();
+
+    private Assets() {
+    }
+
+    /**
+     * Starts loading every asset the game uses in the background, returning straight away
+     * @param app the sketch to load them with, which must be set up far enough to have a sketch path and graphics
+     */
+    public static void preload(PApplet app) {
+        request("image:" + SHIP_IMAGE, () -> app.loadImage(SHIP_IMAGE));
+        request("font:" + TEXT_FONT + ":" + SCORE_SIZE, () -> app.createFont(TEXT_FONT, SCORE_SIZE));
+        request("font:" + TEXT_FONT + ":" + END_SIZE, () -> app.createFont(TEXT_FONT, END_SIZE));
+        request("font:" + PROFILE_FONT + ":" + PROFILE_SIZE, () -> app.createFont(PROFILE_FONT, PROFILE_SIZE));
+        request("sound:" + THUMP_SOUND, () -> decodeSound(app, THUMP_SOUND));
+        request("sound:" + VIBRAPHONE_SOUND, () -> decodeSound(app, VIBRAPHONE_SOUND));
+    }
+
+    /**
+     * @return whether every asset asked for so far has finished loading, without waiting for any
+     */
+    public static boolean isLoaded() {
+        for (CompletableFuture<?> asset : CACHE.values()) {
+            if (!asset.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param app the sketch to load the image with if it isn't cached
+     * @param path path of the image relative to the sketch
+     * @return the image, waiting for it to load if it hasn't yet
+     */
+    public static PImage image(PApplet app, String path) {
+        return (PImage) request("image:" + path, () -> app.loadImage(path)).join();
+    }
+
+    /**
+     * @param app the sketch to create the font with if it isn't cached
+     * @param name name of the font
+     * @param size size of the font
+     * @return the font, waiting for it to be created if it hasn't been yet
+     */
+    public static PFont font(PApplet app, String name, int size) {
+        return (PFont) request("font:" + name + ":" + size, () -> app.createFont(name, size)).join();
+    }
+
+    /**
+     * @param app the sketch to load the sound with if it isn't cached
+     * @param path path of the sound file relative to the sketch
+     * @return the sound decoded into memory, waiting for it to be decoded if it hasn't been yet, or null if it can't be
+     *         read
+     */
+    public static PcmSound sound(PApplet app, String path) {
+        return (PcmSound) request("sound:" + path, () -> decodeSound(app, path)).join();
+    }
+
+    /**
+     * @param app the sketch to load the sound with
+     * @param path path of the sound file relative to the sketch
+     * @return the decoded sound, or null if it can't be read or decoded
+     */
+    private static PcmSound decodeSound(PApplet app, String path) {
+        byte[] data = app.loadBytes(path);
+        if (data == null) {
+            return null;
+        }
+        try {
+            return PcmSound.decode(data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @param key kind and name of an asset
+     * @param loader loads the asset, only called if it isn't already cached
+     * @return the cached asset, which may still be loading
+     */
+    private static CompletableFuture<?> request(String key, Supplier<?> loader) {
+        return CACHE.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(loader, LOADER));
+    }
+
+}
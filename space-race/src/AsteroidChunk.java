@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * This is the AsteroidChunk class. It is one horizontal band, CHUNK_HEIGHT pixels tall, of the asteroids on a long
+ * course (see CourseField). Everything about a chunk's asteroids is worked out from the match's seed and the chunk's
+ * index alone, so the same chunk can be thrown away and generated again later, on any thread, and come out exactly the
+ * same. Asteroids never change once generated: each one's x position on any tick follows from where it was on tick 0
+ * and which way it is going, so a chunk needs no updating as the match is played, and can be shared between threads.
+ */
+public class AsteroidChunk {
+
+    public static final int CHUNK_HEIGHT = 256; // height of the band each chunk covers
+    public static final int ASTEROIDS_PER_CHUNK = 15; // asteroids placed in each band, about as dense as the window
+
+    private final long index; // position of the band, counting down from the top of the course
+    private final int width; // width of the playing field, which the asteroids wrap around
+    private final int[] x; // x position of each asteroid on tick 0
+    private final int[] y; // y position of each asteroid on the course
+    private final int[] dx; // direction of each asteroid, -1 when moving left and 1 when moving right
+
+    /**
+     * Constructor that generates a chunk's asteroids. Asteroids that would land in the 100 pixels above the bottom of
+     * the course are left out, so the ships start in clear space as they do in the window
+     * @param seed seed of the match
+     * @param index position of the band, counting down from the top of the course
+     * @param width width of the playing field
+     * @param courseHeight height of the whole course
+     */
+    public AsteroidChunk(long seed, long index, int width, long courseHeight) {
+        this.index = index;
+        this.width = width;
+        Rng rng = new Rng(new Rng(seed ^ index * 0xBF58476D1CE4E5B9L).nextLong()); // a separate stream per chunk
+        int[] x = new int[ASTEROIDS_PER_CHUNK];
+        int[] y = new int[ASTEROIDS_PER_CHUNK];
+        int[] dx = new int[ASTEROIDS_PER_CHUNK];
+        long top = index * CHUNK_HEIGHT;
+        int count = 0;
+        for (int i = 0; i < ASTEROIDS_PER_CHUNK; i++) {
+            long ay = top + (long) (rng.nextDouble() * CHUNK_HEIGHT);
+            int ax = (int) (rng.nextDouble() * width);
+            int adx = rng.nextDouble() < 0.5 ? 1 : -1;
+            if (ay >= courseHeight - 100) {
+                continue;
+            }
+            x[count] = ax;
+            y[count] = (int) ay;
+            dx[count] = adx;
+            count++;
+        }
+        this.x = Arrays.copyOf(x, count);
+        this.y = Arrays.copyOf(y, count);
+        this.dx = Arrays.copyOf(dx, count);
+    }
+
+    /**
+     * @return position of the band, counting down from the top of the course
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * @return number of asteroids in the chunk
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * Asteroids move one pixel per tick and wrap around to the other side of the field once they cross it
+     * @param i index of an asteroid
+     * @param tick a tick of the match
+     * @return x position of the asteroid on that tick
+     */
+    public int getX(int i, long tick) {
+        return (int) Math.floorMod(this.x[i] + this.dx[i] * tick, (long) this.width);
+    }
+
+    /**
+     * @param i index of an asteroid
+     * @return y position of the asteroid on the course
+     */
+    public int getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * @param i index of an asteroid
+     * @return whether the asteroid is moving left
+     */
+    public boolean isGoingLeft(int i) {
+        return dx[i] < 0;
+    }
+
+}
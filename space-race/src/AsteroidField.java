@@ -0,0 +1,315 @@
+import java.util.Arrays;
+
+/**
+ * This is the AsteroidField class. It stores every asteroid in the game as a position in a set of primitive arrays
+ * (one array of x positions, one of y positions and one of directions) instead of as separate objects, so that moving
+ * and collision checking the whole field is one tight loop over contiguous memory that allocates nothing.
+ *
+ * Asteroids start on either side of the window at a random x and y position so that all together, they create a "field"
+ * of asteroids moving at many different places for the ships to navigate through. Each asteroid moves one pixel per
+ * tick and wraps back to the side it started on once it has crossed the window.
+ *
+ * An AsteroidGrid is kept up to date as the asteroids move, so collision checks only look at asteroids close to a ship.
+ */
+public class AsteroidField {
+
+    public static final int SIZE = 5; // width and height of an asteroid in pixels
+
+    private static final TriangleBatch BATCH = TriangleBatch.create(); // narrow phase test, vectorized when available
+
+    private final int width; // width of the playing field
+    private final int height; // height of the playing field
+    private final Rng rng; // source of random positions for new asteroids
+    private final int[] x; // x position of each asteroid
+    private final int[] y; // y position of each asteroid
+    private final int[] dx; // direction of each asteroid, -1 when moving left and 1 when moving right
+    private final AsteroidGrid grid; // cells of nearby asteroids used to narrow down collision checks
+    private boolean gridStale; // whether asteroids have moved without the grid being updated, see moveRange()
+    private int[] nearX = new int[64]; // x positions of the asteroids gathered near a ship, reused every check
+    private int[] nearY = new int[64]; // y positions of the asteroids gathered near a ship, reused every check
+
+    /**
+     * Constructor to create a field of asteroids, each at a randomized position as seen in setAsteroid()
+     * @param width width of the playing field
+     * @param height height of the playing field
+     * @param count number of asteroids in the field
+     * @param rng source of random positions for the asteroids
+     */
+    public AsteroidField(int width, int height, int count, Rng rng) {
+        this.width = width;
+        this.height = height;
+        this.rng = rng;
+        this.x = new int[count];
+        this.y = new int[count];
+        this.dx = new int[count];
+        this.grid = new AsteroidGrid(width, height, count);
+        for (int i = 0; i < count; i++) {
+            this.setAsteroid(i);
+            this.grid.insert(i, this.x[i], this.y[i]);
+        }
+    }
+
+    /**
+     * Sets a random y position for an asteroid (no lower than 100 pixels from the bottom of the window) then
+     * randomizes what side the asteroid will start on. Finally it randomizes the x position in the space the
+     * asteroid starts on, so there is buffer between each asteroid drawn and they aren't in a line
+     * @param i index of the asteroid to place
+     */
+    public void setAsteroid(int i) {
+
+        // y set to a random position somewhere between the top of the window and 100 pixels above the bottom
+        this.y[i] = (int) (this.rng.nextDouble() * (this.height - 100));
+        double spawnPossiblity = this.rng.nextDouble();
+
+        // x set to somewhere between the left edge of the window and one window's width to the left of that edge
+        if (spawnPossiblity < 0.5) {
+            this.x[i] = (int) (this.rng.nextDouble() * (-this.width));
+            this.dx[i] = 1;
+
+        // x set to somewhere between the left and right edges of the window
+        } else {
+            this.x[i] = (int) (this.rng.nextDouble() * this.width);
+            this.dx[i] = -1;
+        }
+    }
+
+    /**
+     * Moves every asteroid one pixel in its direction and then checks the ships against the asteroids near them, the
+     * same as calling move() and then collide()
+     * @param ships ships to check for collision with the moved asteroids
+     * @return a bitmask with bit i set if ships[i] was hit by at least one asteroid
+     */
+    public int step(Ship[] ships) {
+        this.move();
+        return this.collide(ships);
+    }
+
+    /**
+     * Moves every asteroid one pixel in its direction, wrapping left moving asteroids that reach the left side back to
+     * the right edge and right moving asteroids that reach the right side back to the left edge
+     */
+    public void move() {
+        if (this.gridStale) {
+            this.rebuildGrid();
+        }
+        int[] x = this.x;
+        int[] y = this.y;
+        int[] dx = this.dx;
+        int width = this.width;
+        AsteroidGrid grid = this.grid;
+        for (int i = 0; i < x.length; i++) {
+            int nx = x[i] + dx[i];
+            if (dx[i] < 0 && nx <= 0) {
+                nx = width;
+            } else if (dx[i] > 0 && nx >= width) {
+                nx = 0;
+            }
+            x[i] = nx;
+            grid.update(i, nx, y[i]);
+        }
+    }
+
+    /**
+     * Checks the ships against the asteroids near them. Every asteroid should have been moved before any ship is
+     * checked, so the result doesn't depend on the order the asteroids are stored in
+     * @param ships ships to check for collision with the asteroids
+     * @return a bitmask with bit i set if ships[i] was hit by at least one asteroid
+     */
+    public int collide(Ship[] ships) {
+        int hits = 0;
+        for (int s = 0; s < ships.length; s++) {
+            if (this.collides(ships[s])) {
+                hits |= 1 << s;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Checks a ship against the asteroids in the cells its triangle overlaps. Their positions are first copied next to
+     * each other into reusable arrays so the whole group can be checked as one batch
+     * @param ship ship to check
+     * @return whether any asteroid is inside the ship's triangle
+     */
+    public boolean collides(Ship ship) {
+        if (this.gridStale) {
+            this.rebuildGrid();
+        }
+        AsteroidGrid grid = this.grid;
+        int minCol = grid.colFor(ship.getX() - ship.getHalfWidth());
+        int maxCol = grid.colFor(ship.getX() + ship.getHalfWidth());
+        int minRow = grid.rowFor(ship.getY() - ship.getNoseOffset());
+        int maxRow = grid.rowFor(ship.getY() + ship.getBaseOffset());
+        int count = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                for (int i = grid.first(col, row); i != -1; i = grid.next(i)) {
+                    if (count == this.nearX.length) {
+                        this.nearX = Arrays.copyOf(this.nearX, count * 2);
+                        this.nearY = Arrays.copyOf(this.nearY, count * 2);
+                    }
+                    this.nearX[count] = this.x[i];
+                    this.nearY[count] = this.y[i];
+                    count++;
+                }
+            }
+        }
+        return ship.collision(BATCH, this.nearX, this.nearY, count);
+    }
+
+    /**
+     * Moves the asteroids from index from up to (not including) index to, exactly as step() would, and checks each one
+     * against a set of triangles straight after moving it. Nothing outside that range of the arrays is read or written,
+     * so separate ranges can be moved on separate threads at the same time. The grid isn't updated; whoever splits the
+     * field up must call invalidateGrid() first
+     * @param from index of the first asteroid to move
+     * @param to index after the last asteroid to move
+     * @param triangles the vertices of each triangle to check, six ints per triangle (ax, ay, bx, by, cx, cy)
+     * @param count number of triangles in the array
+     * @return a bitmask with bit s set if triangle s contains at least one of the moved asteroids
+     */
+    public int moveRange(int from, int to, int[] triangles, int count) {
+        int[] x = this.x;
+        int[] y = this.y;
+        int[] dx = this.dx;
+        int width = this.width;
+        int hits = 0;
+        for (int i = from; i < to; i++) {
+            int nx = x[i] + dx[i];
+            if (dx[i] < 0 && nx <= 0) {
+                nx = width;
+            } else if (dx[i] > 0 && nx >= width) {
+                nx = 0;
+            }
+            x[i] = nx;
+            int ny = y[i];
+            for (int s = 0; s < count; s++) {
+                int t = 6 * s;
+                int ax = triangles[t], ay = triangles[t + 1];
+                int bx = triangles[t + 2], by = triangles[t + 3];
+                int cx = triangles[t + 4], cy = triangles[t + 5];
+
+                // rejects asteroids outside the triangle's bounding box before doing the exact check
+                if (nx < Math.min(ax, Math.min(bx, cx)) || nx > Math.max(ax, Math.max(bx, cx))
+                        || ny < Math.min(ay, Math.min(by, cy)) || ny > Math.max(ay, Math.max(by, cy))) {
+                    continue;
+                }
+                if (Ship.pointInTriangle(nx, ny, ax, ay, bx, by, cx, cy)) {
+                    hits |= 1 << s;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Copies the x position of every asteroid into an array. The y positions and directions never change once the
+     * field has been created, so the x positions are all that is needed to put the field back with restoreX()
+     * @param into array of at least size() ints to write into
+     */
+    public void saveX(int[] into) {
+        System.arraycopy(this.x, 0, into, 0, this.x.length);
+    }
+
+    /**
+     * Puts every asteroid back at the x position saveX() copied. Only asteroids that end up in a different cell are
+     * moved in the grid, which is very few of them when going back a handful of ticks
+     * @param from array written by saveX()
+     */
+    public void restoreX(int[] from) {
+        System.arraycopy(from, 0, this.x, 0, this.x.length);
+        if (!this.gridStale) {
+            for (int i = 0; i < this.x.length; i++) {
+                this.grid.update(i, this.x[i], this.y[i]);
+            }
+        }
+    }
+
+    /**
+     * Marks the grid as out of date, so it is rebuilt from scratch the next time move() or collides() needs it
+     */
+    public void invalidateGrid() {
+        this.gridStale = true;
+    }
+
+    /**
+     * Empties the grid and puts every asteroid back into the cell it is in now
+     */
+    private void rebuildGrid() {
+        this.grid.clear();
+        for (int i = 0; i < this.x.length; i++) {
+            this.grid.insert(i, this.x[i], this.y[i]);
+        }
+        this.gridStale = false;
+    }
+
+    /**
+     * @return the cells the asteroids are listed in, rebuilt first if asteroids have moved without it being updated
+     */
+    public AsteroidGrid getGrid() {
+        if (this.gridStale) {
+            this.rebuildGrid();
+        }
+        return grid;
+    }
+
+    /**
+     * @return number of asteroids in the field
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @param i index of an asteroid
+     * @return x position of the asteroid
+     */
+    public int getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Works out where an asteroid will be after a number of moves, wrapping exactly as move() does, without moving it
+     * @param i index of an asteroid
+     * @param ticks number of moves ahead, 0 or more
+     * @return x position the asteroid will be at
+     */
+    public int predictX(int i, long ticks) {
+        int x = this.x[i];
+        if (this.dx[i] > 0) {
+
+            // right moving asteroids count up to the right edge, then go round from 0 every width ticks
+            return x + ticks < this.width ? (int) (x + ticks) : (int) ((x + ticks) % this.width);
+        }
+
+        // left moving asteroids count down to 1, then go round from the right edge every width ticks
+        int wrap = Math.max(x, 1);
+        return ticks < wrap ? (int) (x - ticks) : (int) (this.width - (ticks - wrap) % this.width);
+    }
+
+    /**
+     * @param i index of an asteroid
+     * @return y position of the asteroid
+     */
+    public int getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * @param i index of an asteroid
+     * @return whether the asteroid is moving left
+     */
+    public boolean isGoingLeft(int i) {
+        return dx[i] < 0;
+    }
+
+    /**
+     * @param i index of an asteroid
+     * @return whether the asteroid went round to the other side of the field on its last move, which move() leaves
+     *         left moving asteroids on the right edge and right moving ones on the left edge for
+     */
+    public boolean hasWrapped(int i) {
+        return dx[i] < 0 ? x[i] == this.width : x[i] == 0;
+    }
+
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * This is the AsteroidGrid class. It is the broad phase of collision detection: the playing field (including the
+ * off-screen space to the left of the window that asteroids start in) is split into square cells, and every asteroid is
+ * kept in a linked list for the cell it is in. A ship then only has to look at the asteroids in the few cells its
+ * triangle overlaps, instead of at every asteroid in the field.
+ *
+ * The lists are stored as primitive arrays indexed by asteroid, so moving an asteroid into a neighbouring cell (which
+ * happens once every CELL_SIZE ticks, or when it wraps) is a constant time unlink and relink that allocates nothing.
+ */
+public class AsteroidGrid {
+
+    public static final int CELL_SHIFT = 5; // log2 of the cell size, so cells can be found with a shift
+    public static final int CELL_SIZE = 1 << CELL_SHIFT; // width and height of a cell in pixels
+
+    private final int originX; // distance from the left edge of the grid to x = 0
+    private final int cols; // number of columns of cells
+    private final int rows; // number of rows of cells
+    private final int[] head; // first asteroid in each cell, or -1 if the cell is empty
+    private final int[] next; // next asteroid in the same cell as each asteroid, or -1
+    private final int[] prev; // previous asteroid in the same cell as each asteroid, or -1
+    private final int[] cellOf; // cell each asteroid is currently listed in
+
+    /**
+     * Constructor for an empty grid covering x positions from one field width left of the window to its right edge,
+     * and y positions from the top of the window to its bottom
+     * @param width width of the playing field
+     * @param height height of the playing field
+     * @param count number of asteroids the grid will hold
+     */
+    public AsteroidGrid(int width, int height, int count) {
+        this.originX = width;
+        this.cols = (2 * width >> CELL_SHIFT) + 1;
+        this.rows = (height >> CELL_SHIFT) + 1;
+        this.head = new int[this.cols * this.rows];
+        this.next = new int[count];
+        this.prev = new int[count];
+        this.cellOf = new int[count];
+        Arrays.fill(this.head, -1);
+    }
+
+    /**
+     * @param x an x position
+     * @return the column of cells the x position is in, clamped to the grid
+     */
+    public int colFor(int x) {
+        int col = (x + this.originX) >> CELL_SHIFT;
+        return col < 0 ? 0 : (col >= this.cols ? this.cols - 1 : col);
+    }
+
+    /**
+     * @param y a y position
+     * @return the row of cells the y position is in, clamped to the grid
+     */
+    public int rowFor(int y) {
+        int row = y >> CELL_SHIFT;
+        return row < 0 ? 0 : (row >= this.rows ? this.rows - 1 : row);
+    }
+
+    /**
+     * @param x an x position
+     * @param y a y position
+     * @return the cell the position is in
+     */
+    public int cellFor(int x, int y) {
+        return this.rowFor(y) * this.cols + this.colFor(x);
+    }
+
+    /**
+     * Adds an asteroid to the list for the cell it is in. Each asteroid must only be inserted once
+     * @param i index of the asteroid
+     * @param x x position of the asteroid
+     * @param y y position of the asteroid
+     */
+    public void insert(int i, int x, int y) {
+        this.link(i, this.cellFor(x, y));
+    }
+
+    /**
+     * Moves an asteroid into the list for the cell at its new position, if it isn't already there
+     * @param i index of the asteroid
+     * @param x new x position of the asteroid
+     * @param y new y position of the asteroid
+     */
+    public void update(int i, int x, int y) {
+        int cell = this.cellFor(x, y);
+        if (cell != this.cellOf[i]) {
+            this.unlink(i);
+            this.link(i, cell);
+        }
+    }
+
+    /**
+     * Empties every cell, so the asteroids can be inserted again from scratch
+     */
+    public void clear() {
+        Arrays.fill(this.head, -1);
+    }
+
+    /**
+     * @return number of columns of cells
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return number of rows of cells
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @param col a column of cells
+     * @param row a row of cells
+     * @return the first asteroid in the cell, or -1 if it is empty
+     */
+    public int first(int col, int row) {
+        return this.head[row * this.cols + col];
+    }
+
+    /**
+     * @param i index of an asteroid
+     * @return the next asteroid in the same cell, or -1 if it is the last one
+     */
+    public int next(int i) {
+        return this.next[i];
+    }
+
+    /**
+     * Puts an asteroid at the front of a cell's list
+     */
+    private void link(int i, int cell) {
+        int first = this.head[cell];
+        this.next[i] = first;
+        this.prev[i] = -1;
+        if (first != -1) {
+            this.prev[first] = i;
+        }
+        this.head[cell] = i;
+        this.cellOf[i] = cell;
+    }
+
+    /**
+     * Takes an asteroid out of its cell's list
+     */
+    private void unlink(int i) {
+        int before = this.prev[i];
+        int after = this.next[i];
+        if (before != -1) {
+            this.next[before] = after;
+        } else {
+            this.head[this.cellOf[i]] = after;
+        }
+        if (after != -1) {
+            this.prev[after] = before;
+        }
+    }
+
+}
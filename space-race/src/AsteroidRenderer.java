@@ -0,0 +1,124 @@
+/**
+ * This is the AsteroidRenderer class. Instead of asking Processing to fill a rectangle for every asteroid, which costs
+ * a Java2D call (and all its state checks) per asteroid, it writes the yellow 5x5 squares for the whole field straight
+ * into a frame's pixel array in one pass. It works on any int[] of ARGB pixels, such as PApplet.pixels after
+ * loadPixels(), so it doesn't need a window.
+ *
+ * Asteroids move one pixel a tick, so between ticks they are drawn part of the way from where they were on the last
+ * tick to where they are now. A square that isn't on a whole pixel covers part of the column on each side of it, and
+ * those two columns are blended with what is already in the frame by how much of them the square covers. An asteroid
+ * that went round to the other side of the field on the last tick is just drawn where it is now.
+ */
+public class AsteroidRenderer {
+
+    public static final int COLOR = 0xFFFFFF00; // opaque yellow, the colour asteroids are drawn in
+
+    private static final int SUBPIXEL_SHIFT = 8; // log2 of the steps each pixel is split into for positions in between
+
+    /**
+     * Draws every asteroid in the field into a pixel array, clipping any that are partly or wholly off the frame
+     * @param pixels ARGB pixels of the frame, row by row
+     * @param width width of the frame in pixels
+     * @param height height of the frame in pixels
+     * @param field asteroids to draw
+     * @param alpha how far the current time is between the last tick and the next one; asteroids are drawn that far
+     *              along from where they were on the tick before to where they are now
+     */
+    public static void draw(int[] pixels, int width, int height, AsteroidField field, float alpha) {
+        int behind = behind(alpha);
+        for (int i = 0; i < field.size(); i++) {
+            int x = field.getX(i) << SUBPIXEL_SHIFT;
+            if (!field.hasWrapped(i)) {
+                x += field.isGoingLeft(i) ? behind : -behind;
+            }
+            square(pixels, width, height, x, field.getY(i), 0, width);
+        }
+    }
+
+    /**
+     * Draws the asteroids of a long course that can be seen through a view into a pixel array. A view is a strip of
+     * the frame's columns showing the course from a y position down, so the two halves of the frame can follow
+     * different parts of the course
+     * @param pixels ARGB pixels of the frame, row by row
+     * @param width width of the frame in pixels
+     * @param height height of the frame in pixels
+     * @param course asteroids to draw
+     * @param tick tick of the match to draw the asteroids at
+     * @param alpha how far the current time is between the last tick and the next one; asteroids are drawn that far
+     *              along from where they were on the tick before to where they are on this tick
+     * @param viewLeft first column of the frame the view covers
+     * @param viewRight column of the frame just past the view
+     * @param viewTop y position on the course shown at the top of the frame
+     */
+    public static void draw(int[] pixels, int width, int height, CourseField course, long tick, float alpha,
+            int viewLeft, int viewRight, long viewTop) {
+        int behind = behind(alpha);
+        long first = Math.max(0, course.chunkAt(viewTop - AsteroidField.SIZE));
+        long last = Math.min(course.getChunkCount() - 1, course.chunkAt(viewTop + height));
+        for (long index = first; index <= last; index++) {
+            AsteroidChunk chunk = course.chunk(index);
+            for (int i = 0; i < chunk.size(); i++) {
+                int now = chunk.getX(i, tick);
+                int x = now << SUBPIXEL_SHIFT;
+
+                // an asteroid more than a pixel from where it was has gone round to the other side of the course
+                if (tick > 0 && Math.abs(now - chunk.getX(i, tick - 1)) <= 1) {
+                    x += chunk.isGoingLeft(i) ? behind : -behind;
+                }
+                square(pixels, width, height, x, (int) (chunk.getY(i) - viewTop), viewLeft, viewRight);
+            }
+        }
+    }
+
+    /**
+     * @param alpha how far the current time is between the last tick and the next one
+     * @return how far behind their current position asteroids are drawn, in steps of a pixel
+     */
+    private static int behind(float alpha) {
+        return Math.round((1f - Math.max(0f, Math.min(1f, alpha))) * (1 << SUBPIXEL_SHIFT));
+    }
+
+    /**
+     * Draws one asteroid's square, clipped to a strip of the frame's columns and to its rows
+     * @param x x position of the square's left edge, in steps of a pixel
+     * @param y y position of the square's top edge
+     * @param clipLeft first column the square may be drawn in
+     * @param clipRight column just past the last one the square may be drawn in
+     */
+    private static void square(int[] pixels, int width, int height, int x, int y, int clipLeft, int clipRight) {
+        int col = x >> SUBPIXEL_SHIFT;
+        int part = x & ((1 << SUBPIXEL_SHIFT) - 1); // how far into its first column the square starts
+        int top = Math.max(y, 0);
+        int bottom = Math.min(y + AsteroidField.SIZE, height);
+        if (top >= bottom) {
+            return;
+        }
+
+        // the square reaches into one more column when it doesn't start on a whole pixel
+        int whole = 1 << SUBPIXEL_SHIFT;
+        int right = col + AsteroidField.SIZE + (part != 0 ? 1 : 0);
+        for (int c = Math.max(col, clipLeft); c < Math.min(right, clipRight); c++) {
+            int coverage = c == col ? whole - part : (c == col + AsteroidField.SIZE ? part : whole);
+            for (int row = top; row < bottom; row++) {
+                int at = row * width + c;
+                pixels[at] = coverage == whole ? COLOR : blend(pixels[at], coverage);
+            }
+        }
+    }
+
+    /**
+     * @param under colour already in the frame
+     * @param coverage how much of the pixel the asteroid covers, in steps of a whole pixel
+     * @return the asteroid's colour blended over the frame's by how much of the pixel it covers, fully opaque
+     */
+    private static int blend(int under, int coverage) {
+        int r = (under >> 16) & 0xFF;
+        int g = (under >> 8) & 0xFF;
+        int b = under & 0xFF;
+        r += (((COLOR >> 16) & 0xFF) - r) * coverage >> SUBPIXEL_SHIFT;
+        g += (((COLOR >> 8) & 0xFF) - g) * coverage >> SUBPIXEL_SHIFT;
+        b += ((COLOR & 0xFF) - b) * coverage >> SUBPIXEL_SHIFT;
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+}
@@ -0,0 +1,189 @@
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * This is the AudioEngine class. It plays the game's sound effects by mixing them itself, on a thread of its own, into
+ * one Java Sound output line. Every sound is decoded into a PcmSound when the assets load, so nothing is decoded while
+ * the game is running. There is a fixed pool of VOICES voices, each playing one sound from some point in it, and the
+ * mixing thread adds up every voice a BUFFER_FRAMES block at a time and writes the block to the line, which is kept
+ * only a few blocks long so a sound starts within a few milliseconds of being asked for.
+ *
+ * The game asks for a sound with play(), which only puts the sound's number on an InputQueue for the mixing thread to
+ * pick up, so it never allocates, never takes a lock and never waits, even if the line is full. If every voice is busy,
+ * the voice that has played longest is cut short. When there is no audio device (or no sound was loaded) the engine
+ * is silent and play() does nothing.
+ */
+public class AudioEngine implements AutoCloseable {
+
+    public static final int SAMPLE_RATE = 44100; // frames per second of the mix and of every PcmSound
+    public static final int VOICES = 8; // most sounds that can play at once
+    public static final int BUFFER_FRAMES = 256; // frames mixed at a time, about 6 ms
+    public static final int HIT = 0; // sound: a ship was hit by an asteroid
+    public static final int SCORE = 1; // sound: a ship reached the top
+    public static final int GAME_OVER = 2; // sound: the timer ran out
+
+    private static final int LINE_BLOCKS = 4; // blocks the output line holds, which sets the latency
+    private static final int QUEUE_SIZE = 64; // most sounds that can wait to be started
+
+    private final PcmSound[] sounds; // sound played by each of HIT, SCORE and GAME_OVER, or null for none
+    private final float[] gains; // volume each sound is played at
+    private final int[] rates; // speed each sound is played at, in 1/256ths, which also changes its pitch
+    private final SourceDataLine line; // line the mix is written to, or null if the engine is silent
+    private final InputQueue queue = new InputQueue(QUEUE_SIZE); // sounds asked for and not yet started
+    private final InputQueue.Sink starter = this::start; // starts each sound drained from the queue
+    private final int[] voiceSound = new int[VOICES]; // sound each voice is playing, or -1 if it is free
+    private final long[] voicePosition = new long[VOICES]; // how far each voice is through its sound, in 1/256ths
+    private final float[] mix = new float[BUFFER_FRAMES]; // samples of the block being mixed
+    private final byte[] block = new byte[BUFFER_FRAMES * 2]; // the mixed block as 16 bit little endian PCM
+    private final Thread mixer; // thread mixing and writing blocks, or null if the engine is silent
+    private volatile boolean running; // cleared by close() to stop the mixing thread
+
+    /**
+     * Constructor for an engine that opens the default output line and starts mixing, or is silent if it can't
+     * @param hit sound played when a ship is hit, or null
+     * @param score sound played when a ship scores, or null
+     */
+    public AudioEngine(PcmSound hit, PcmSound score) {
+        this.sounds = new PcmSound[] { hit, score, score };
+        this.gains = new float[] { 0.8f, 0.6f, 0.8f };
+        this.rates = new int[] { 256, 256, 128 }; // the end of the match is the scoring sound an octave down
+        Arrays.fill(this.voiceSound, -1);
+        this.line = hit != null || score != null ? openLine() : null;
+        if (this.line != null) {
+            this.running = true;
+            this.mixer = new Thread(this::run, "audio-mixer");
+            this.mixer.setDaemon(true);
+            this.mixer.setPriority(Thread.MAX_PRIORITY);
+            this.mixer.start();
+        } else {
+            this.mixer = null;
+        }
+    }
+
+    /**
+     * Asks for a sound to be played. Never allocates or blocks, so it is safe to call from the animation thread in the
+     * middle of a frame, but must only ever be called from that one thread
+     * @param sound one of HIT, SCORE and GAME_OVER
+     */
+    public void play(int sound) {
+        if (this.running) {
+            this.queue.offer(sound, System.nanoTime());
+        }
+    }
+
+    /**
+     * @return whether sounds are actually being played
+     */
+    public boolean isPlaying() {
+        return running;
+    }
+
+    /**
+     * Stops the mixing thread and closes the output line
+     */
+    @Override
+    public void close() {
+        if (this.mixer != null && this.running) {
+            this.running = false;
+            try {
+                this.mixer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.line.close();
+        }
+    }
+
+    /**
+     * Mixes the next block of every voice playing, starting any sounds asked for since the last block. Called on the
+     * mixing thread only, as the one consumer of the queue play() fills; a silent engine has no mixing thread and
+     * play() queues nothing for it, so there is nothing to mix without an output line
+     * @param out receives the block as 16 bit little endian mono PCM, BUFFER_FRAMES * 2 bytes
+     */
+    void mix(byte[] out) {
+        this.queue.drain(this.starter);
+        Arrays.fill(this.mix, 0f);
+        for (int v = 0; v < VOICES; v++) {
+            int s = this.voiceSound[v];
+            if (s == -1) {
+                continue;
+            }
+            PcmSound sound = this.sounds[s];
+            float gain = this.gains[s];
+            int rate = this.rates[s];
+            long position = this.voicePosition[v];
+            for (int f = 0; f < BUFFER_FRAMES; f++) {
+                int i = (int) (position >> 8);
+                if (i >= sound.length()) {
+                    s = -1;
+                    break;
+                }
+                this.mix[f] += sound.get(i) * gain;
+                position += rate;
+            }
+            this.voiceSound[v] = s;
+            this.voicePosition[v] = position;
+        }
+        for (int f = 0; f < BUFFER_FRAMES; f++) {
+            int sample = Math.round(Math.max(-1f, Math.min(1f, this.mix[f])) * 32767f);
+            out[2 * f] = (byte) sample;
+            out[2 * f + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * Puts a sound on a free voice, or on the voice that has played longest if none is free
+     * @param sound one of HIT, SCORE and GAME_OVER
+     * @param nanos when the sound was asked for
+     */
+    private void start(int sound, long nanos) {
+        if (sound < 0 || sound >= this.sounds.length || this.sounds[sound] == null) {
+            return;
+        }
+        int voice = 0;
+        for (int v = 0; v < VOICES; v++) {
+            if (this.voiceSound[v] == -1) {
+                voice = v;
+                break;
+            }
+            if (this.voicePosition[v] > this.voicePosition[voice]) {
+                voice = v;
+            }
+        }
+        this.voiceSound[voice] = sound;
+        this.voicePosition[voice] = 0;
+    }
+
+    /**
+     * Mixes blocks and writes them to the line until the engine is closed. Writing waits while the line is full, which
+     * is what paces the thread
+     */
+    private void run() {
+        this.line.start();
+        while (this.running) {
+            this.mix(this.block);
+            this.line.write(this.block, 0, this.block.length);
+        }
+        this.line.stop();
+    }
+
+    /**
+     * @return the default output line opened for the engine's format, or null if there isn't one
+     */
+    private static SourceDataLine openLine() {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        try {
+            SourceDataLine line = AudioSystem.getSourceDataLine(format);
+            line.open(format, BUFFER_FRAMES * 2 * LINE_BLOCKS);
+            return line;
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            System.out.println("No audio device, playing without sound");
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the BalanceAnalyzer class. It is a command line tool for tuning the game: it plays a large number of matches
+ * without a window for every combination of settings it is given, spread over every core, and writes one line of
+ * statistics per combination to a CSV file as soon as that combination is done.
+ *
+ * The settings swept are the number of asteroids ("--asteroids"), the ships' speed in pixels per tick ("--speed"),
+ * the size of the ships' triangles as a percentage of the usual size ("--size") and the length of a match
+ * ("--match-seconds"), each a comma separated list, plus "--matches N" matches per combination. Both ships are flown
+ * by a ShipBot ("--players bot", the default) or simply held up the whole match ("--players up"). Match k of every
+ * combination uses the same seed, so differences between combinations come from the settings and not from the fields.
+ *
+ * For each combination the statistics are the mean score of each ship per match and the standard deviation of a
+ * ship's score, hits per match, the share of runs up the field that ended in a hit (the collision rate), the mean time
+ * taken by the runs that scored, and how often each side won, with the left side's win rate minus the right side's
+ * and the standard error of that difference. Each thread keeps its own totals, which are whole numbers added together
+ * at the end, so the results are the same however many threads are used.
+ */
+public class BalanceAnalyzer {
+
+    private static final String HEADER = "asteroids,ship_speed,ship_size,match_seconds,players,matches,"
+            + "mean_score_left,mean_score_right,score_stddev,hits_per_match,collision_rate,mean_crossing_seconds,"
+            + "left_win_rate,right_win_rate,draw_rate,win_skew,win_skew_stderr";
+
+    private final ForkJoinPool pool; // threads the matches are played on
+    private final long matches; // matches played for each combination
+    private final long seed; // seed the matches' seeds are drawn from
+    private final boolean bots; // whether ShipBots fly the ships, otherwise they are held up
+
+    /**
+     * Constructor for an analyzer that plays on a pool of threads
+     * @param pool threads to play the matches on
+     * @param matches matches to play for each combination of settings
+     * @param seed seed the matches' seeds are drawn from
+     * @param bots whether ShipBots fly the ships, otherwise both ships are held up the whole match
+     */
+    public BalanceAnalyzer(ForkJoinPool pool, long matches, long seed, boolean bots) {
+        this.pool = pool;
+        this.matches = matches;
+        this.seed = seed;
+        this.bots = bots;
+    }
+
+    /**
+     * Plays every match of one combination of settings, with each thread taking the next match to play as soon as it
+     * has finished one
+     * @param settings the combination to play
+     * @return the totals of every match
+     */
+    public Tally run(MatchSettings settings) {
+        AtomicLong next = new AtomicLong();
+        List<Future<Tally>> parts = new ArrayList<>();
+        for (int t = 0; t < this.pool.getParallelism(); t++) {
+            parts.add(this.pool.submit(() -> {
+                Tally tally = new Tally();
+                for (long m = next.getAndIncrement(); m < this.matches; m = next.getAndIncrement()) {
+                    this.play(settings, m, tally);
+                }
+                return tally;
+            }));
+        }
+        Tally total = new Tally();
+        for (Future<Tally> part : parts) {
+            try {
+                total.add(part.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Plays one match to the end and adds it to a tally
+     * @param settings the combination being played
+     * @param match index of the match, which decides its seed
+     * @param tally totals to add the match to
+     */
+    private void play(MatchSettings settings, long match, Tally tally) {
+        GameState state = new GameState(settings, new Rng(this.seed ^ match * 0x9E3779B97F4A7C15L).nextLong());
+        Ship[] ships = { state.getLeftShip(), state.getRightShip() };
+        ShipBot[] players = new ShipBot[0];
+        if (this.bots) {
+            players = new ShipBot[] { new ShipBot(state, ships[0]), new ShipBot(state, ships[1]) };
+        } else {
+            ships[0].setUp(true);
+            ships[1].setUp(true);
+        }
+        long[] startedAt = new long[2]; // tick each ship last set off from the bottom
+        int[] scores = new int[2];
+        int[] hits = new int[2];
+        while (!state.isOver()) {
+            for (ShipBot player : players) {
+                player.control();
+            }
+            state.tick();
+            for (int s = 0; s < 2; s++) {
+                if (ships[s].getScore() != scores[s]) {
+                    tally.crossingTicks += state.getTickCount() - startedAt[s];
+                    startedAt[s] = state.getTickCount();
+                    scores[s] = ships[s].getScore();
+                } else if (ships[s].getHits() != hits[s]) {
+                    startedAt[s] = state.getTickCount();
+                    hits[s] = ships[s].getHits();
+                }
+            }
+        }
+        tally.matches++;
+        tally.scoreLeft += scores[0];
+        tally.scoreRight += scores[1];
+        tally.scoreSquares += (long) scores[0] * scores[0] + (long) scores[1] * scores[1];
+        tally.hits += hits[0] + hits[1];
+        if (scores[0] > scores[1]) {
+            tally.leftWins++;
+        } else if (scores[1] > scores[0]) {
+            tally.rightWins++;
+        }
+    }
+
+    /**
+     * Whole number totals over a set of matches, which can be added together in any order
+     */
+    public static class Tally {
+
+        long matches; // matches played
+        long scoreLeft; // points scored by the left ship
+        long scoreRight; // points scored by the right ship
+        long scoreSquares; // sum of the square of every ship's score in every match
+        long hits; // hits taken by both ships
+        long crossingTicks; // ticks taken by every run up the field that scored
+        long leftWins; // matches the left ship won
+        long rightWins; // matches the right ship won
+
+        /**
+         * Adds another tally's totals to this one
+         * @param other totals to add
+         */
+        void add(Tally other) {
+            this.matches += other.matches;
+            this.scoreLeft += other.scoreLeft;
+            this.scoreRight += other.scoreRight;
+            this.scoreSquares += other.scoreSquares;
+            this.hits += other.hits;
+            this.crossingTicks += other.crossingTicks;
+            this.leftWins += other.leftWins;
+            this.rightWins += other.rightWins;
+        }
+
+        /**
+         * @return the statistics as the last eleven columns of a CSV line, after the number of matches
+         */
+        String toCsv() {
+            double n = Math.max(1, this.matches);
+            long scores = this.scoreLeft + this.scoreRight;
+            double meanScore = scores / (2 * n);
+            double variance = Math.max(0, this.scoreSquares / (2 * n) - meanScore * meanScore);
+            double left = this.leftWins / n;
+            double right = this.rightWins / n;
+            double skew = left - right;
+            return String.format(Locale.ROOT, "%d,%.4f,%.4f,%.4f,%.4f,%.4f,%.3f,%.4f,%.4f,%.4f,%.4f,%.4f",
+                    this.matches, this.scoreLeft / n, this.scoreRight / n, Math.sqrt(variance), this.hits / n,
+                    scores + this.hits == 0 ? 0.0 : (double) this.hits / (scores + this.hits),
+                    scores == 0 ? 0.0 : (double) this.crossingTicks / scores / GameState.TICKS_PER_SECOND,
+                    left, right, 1 - left - right, skew, Math.sqrt(Math.max(0, left + right - skew * skew) / n));
+        }
+
+    }
+
+    /**
+     * Runs the sweep given on the command line, for example
+     * "--asteroids 20,30,60 --speed 2,3 --size 80,100 --match-seconds 45,62.5 --matches 100000 --out sweep.csv",
+     * with "--threads N" (every core by default), "--seed N" and "--players bot|up". Lines go to standard output if
+     * there is no "--out FILE"
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        int threads = (int) number(args, "--threads", Runtime.getRuntime().availableProcessors());
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        BalanceAnalyzer analyzer = new BalanceAnalyzer(pool, (long) number(args, "--matches", 1000),
+                (long) number(args, "--seed", 0), !"up".equals(option(args, "--players")));
+        double[] asteroids = numbers(args, "--asteroids", 30);
+        double[] speeds = numbers(args, "--speed", Ship.SPEED);
+        double[] sizes = numbers(args, "--size", 100);
+        double[] lengths = numbers(args, "--match-seconds",
+                (double) GameState.DEFAULT_MATCH_TICKS / GameState.TICKS_PER_SECOND);
+        String outFile = option(args, "--out");
+        try (PrintStream out = outFile != null ? new PrintStream(Files.newOutputStream(Paths.get(outFile))) : null) {
+            PrintStream csv = out != null ? out : System.out;
+            csv.println(HEADER);
+            for (double count : asteroids) {
+                for (double speed : speeds) {
+                    for (double size : sizes) {
+                        for (double seconds : lengths) {
+                            MatchSettings settings = new MatchSettings();
+                            settings.setAsteroids((int) count);
+                            settings.setShipSpeed((int) speed);
+                            settings.setShipSize((int) size);
+                            settings.setMatchTicks((int) Math.round(seconds * GameState.TICKS_PER_SECOND));
+                            Tally tally = analyzer.run(settings);
+                            csv.println(String.format(Locale.ROOT, "%d,%d,%d,%.2f,%s,", settings.getAsteroids(),
+                                    settings.getShipSpeed(), settings.getShipSize(),
+                                    (double) settings.getMatchTicks() / GameState.TICKS_PER_SECOND,
+                                    analyzer.bots ? "bot" : "up") + tally.toCsv());
+                            csv.flush();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return the numbers in the comma separated list following an option, or just the default if it wasn't passed
+     */
+    private static double[] numbers(String[] args, String option, double fallback) {
+        String list = option(args, option);
+        if (list == null) {
+            return new double[] { fallback };
+        }
+        String[] parts = list.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * @return the number following an option, or the default if it wasn't passed
+     */
+    private static double number(String[] args, String option, double fallback) {
+        String value = option(args, option);
+        return value != null ? Double.parseDouble(value) : fallback;
+    }
+
+    /**
+     * @return the argument following an option, or null if it wasn't passed
+     */
+    private static String option(String[] args, String option) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(option)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+}
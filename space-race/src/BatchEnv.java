@@ -0,0 +1,380 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This is the BatchEnv class. It runs many independent matches side by side without a window, for training agents to
+ * play: each call to step() takes one input mask per match, ticks every match once under the same rules as Race (a
+ * ship scores at the top of the field and respawns at the bottom when an asteroid hits it), and writes what each
+ * ship can see into one direct FloatBuffer that can be handed to native code without copying. Every match has the
+ * same number of ships, two unless the constructor is given another count.
+ *
+ * The observation of a match is getObservationSize() floats, at match * getObservationSize() in the buffer: the
+ * fraction of the match still to play, then for each ship its x and y position as fractions of the field, followed by
+ * the NEAREST asteroids closest to it, each as its offset from the ship (as fractions of the field's width and height)
+ * and its direction (-1 moving left, 1 moving right, 0 for a slot with no asteroid in it). The nearest asteroids are
+ * found in the field's collision grid, a ring of cells at a time outwards from the ship, so only the cells around it
+ * are looked at however big the field is. Each ship's reward for the step, SCORE_REWARD for reaching the top and
+ * HIT_REWARD for being hit, goes into a float array at match * getShips() + ship, and whether the match ended on the
+ * step into a boolean array at match.
+ *
+ * A match that ends is replaced straight away by a new one with its next seed, and the observation written for it is
+ * the first of the new match, so the caller never has to reset matches itself. The buffer and arrays are created once
+ * and stepping allocates nothing, apart from the new GameState each time a match ends. Matches can be split across the
+ * threads of a ForkJoinPool with setPool(); each match only ever touches its own part of the buffer and arrays, so the
+ * results are the same whichever order they run in.
+ */
+public class BatchEnv {
+
+    public static final int WIDTH = 800; // width of every match's field, the same as Race's window
+    public static final int HEIGHT = 600; // height of every match's field, the same as Race's window
+    public static final int NEAREST = 8; // asteroids observed around each ship
+    public static final int SHIP_FLOATS = 2 + 3 * NEAREST; // floats observed for each ship
+    public static final int OBSERVATION_SIZE = 1 + 2 * SHIP_FLOATS; // floats observed for each match of two ships
+    public static final float SCORE_REWARD = 1f; // reward for a ship reaching the top
+    public static final float HIT_REWARD = -1f; // reward for a ship being hit by an asteroid
+
+    private static final int MIN_MATCHES_PER_TASK = 16; // fewest matches given to one task when using a pool
+
+    private final MatchSettings settings; // size of the field, asteroids, length and ships of every match
+    private final int ships; // ships in every match
+    private final int observationSize; // floats observed for each match
+    private final GameState[] states; // the match being played in each slot
+    private final Rng[] seeds; // source of the seed of each slot's next match
+    private final int[] scores; // each ship's score at the end of the last step, at match * ships + ship
+    private final int[] hits; // each ship's hits at the end of the last step, at match * ships + ship
+    private final FloatBuffer observations; // what each ship can see after the last step
+    private final float[] rewards; // each ship's reward for the last step, at match * ships + ship
+    private final boolean[] dones; // whether each match ended on the last step
+    private final Range all; // task that steps every match on the calling thread
+    private ForkJoinPool pool; // threads the matches are stepped on, or null for the calling thread
+    private Range[] ranges; // one reusable task per group of matches when using a pool
+    private StepAll root; // reusable task that runs every group and waits for them
+    private int[] actions; // input masks for the step being run
+
+    /**
+     * Constructor for matches of the default length, see BatchEnv(int, int, long, int)
+     * @param matches number of matches run side by side
+     * @param numAsteroids number of asteroids in each match
+     * @param seed seed every match's seeds are drawn from
+     */
+    public BatchEnv(int matches, int numAsteroids, long seed) {
+        this(matches, numAsteroids, seed, GameState.DEFAULT_MATCH_TICKS);
+    }
+
+    /**
+     * Constructor for matches between two ships, see BatchEnv(int, int, long, int, int)
+     * @param matches number of matches run side by side
+     * @param numAsteroids number of asteroids in each match
+     * @param seed seed every match's seeds are drawn from, so the same seed plays the same matches again
+     * @param matchTicks number of ticks each match lasts, kept between GameState.MIN_MATCH_TICKS and MAX_MATCH_TICKS
+     */
+    public BatchEnv(int matches, int numAsteroids, long seed, int matchTicks) {
+        this(matches, numAsteroids, seed, matchTicks, 2);
+    }
+
+    /**
+     * Constructor that starts every match and writes the first observation of each
+     * @param matches number of matches run side by side
+     * @param numAsteroids number of asteroids in each match
+     * @param seed seed every match's seeds are drawn from, so the same seed plays the same matches again
+     * @param matchTicks number of ticks each match lasts, kept between GameState.MIN_MATCH_TICKS and MAX_MATCH_TICKS
+     * @param ships number of ships in each match, kept between 1 and GameState.MAX_SHIPS
+     */
+    public BatchEnv(int matches, int numAsteroids, long seed, int matchTicks, int ships) {
+        this.settings = new MatchSettings();
+        this.settings.setWidth(WIDTH);
+        this.settings.setHeight(HEIGHT);
+        this.settings.setAsteroids(numAsteroids);
+        this.settings.setMatchTicks(matchTicks);
+        this.settings.setShips(Math.max(1, Math.min(GameState.MAX_SHIPS, ships)));
+        this.ships = this.settings.getShips();
+        this.observationSize = 1 + this.ships * SHIP_FLOATS;
+        this.states = new GameState[matches];
+        this.seeds = new Rng[matches];
+        this.scores = new int[this.ships * matches];
+        this.hits = new int[this.ships * matches];
+        this.observations = ByteBuffer.allocateDirect(4 * this.observationSize * matches)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        this.rewards = new float[this.ships * matches];
+        this.dones = new boolean[matches];
+        this.all = new Range(0, matches);
+        Rng rng = new Rng(seed);
+        for (int m = 0; m < matches; m++) {
+            this.seeds[m] = new Rng(rng.nextLong());
+            this.all.start(m);
+        }
+    }
+
+    /**
+     * Ticks every match once. For each ship, bit 2 * ship of its match's mask moves it up and the bit above that moves
+     * it down, as in GameState.setInputMask(). Afterwards the observations, rewards and done flags describe the step
+     * @param actions one input mask per match
+     */
+    public void step(int[] actions) {
+        this.actions = actions;
+        if (this.pool == null) {
+            this.all.run();
+        } else {
+            this.root.reinitialize();
+            this.pool.invoke(this.root);
+        }
+        this.actions = null;
+    }
+
+    /**
+     * Steps the matches across the threads of a pool from now on, in groups of at least MIN_MATCHES_PER_TASK matches
+     * @param pool threads to step the matches on, or null to go back to stepping them on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        if (pool == null) {
+            this.ranges = null;
+            this.root = null;
+            return;
+        }
+        int matches = this.states.length;
+        int count = Math.max(1, Math.min(pool.getParallelism() * 4, matches / MIN_MATCHES_PER_TASK));
+        this.ranges = new Range[count];
+        for (int c = 0; c < count; c++) {
+            this.ranges[c] = new Range((int) ((long) matches * c / count), (int) ((long) matches * (c + 1) / count));
+        }
+        this.root = new StepAll();
+    }
+
+    /**
+     * @return every match's observation after the last step, getObservationSize() floats per match, in native byte
+     *         order
+     */
+    public FloatBuffer getObservations() {
+        return observations;
+    }
+
+    /**
+     * @return every ship's reward for the last step, at match * getShips() + ship
+     */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    /**
+     * @return number of floats in each match's observation, 1 + getShips() * SHIP_FLOATS
+     */
+    public int getObservationSize() {
+        return observationSize;
+    }
+
+    /**
+     * @return whether each match ended on the last step, and was replaced by a new one
+     */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * @return number of matches run side by side
+     */
+    public int getMatches() {
+        return states.length;
+    }
+
+    /**
+     * @return number of ships in each match
+     */
+    public int getShips() {
+        return ships;
+    }
+
+    /**
+     * @param match index of a match
+     * @return the match being played in that slot
+     */
+    public GameState getState(int match) {
+        return states[match];
+    }
+
+    /**
+     * Task that runs every group of matches and waits for all of them to finish
+     */
+    @SuppressWarnings("serial")
+    private class StepAll extends RecursiveAction {
+
+        @Override
+        protected void compute() {
+            for (Range range : ranges) {
+                range.reinitialize();
+            }
+            invokeAll(ranges);
+        }
+
+    }
+
+    /**
+     * Task that steps one group of matches. Each has its own arrays for finding the nearest asteroids, so groups can
+     * run at the same time
+     */
+    @SuppressWarnings("serial")
+    private class Range extends RecursiveAction {
+
+        private final int from; // index of the first match in the group
+        private final int to; // index after the last match in the group
+        private final int[] nearest = new int[NEAREST]; // indexes of the nearest asteroids found so far, closest first
+        private final long[] distances = new long[NEAREST]; // squared distance to each of the nearest asteroids
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            this.run();
+        }
+
+        /**
+         * Steps every match in the group and writes its rewards, done flag and observation
+         */
+        void run() {
+            for (int m = this.from; m < this.to; m++) {
+                GameState state = states[m];
+                state.setInputMask(actions[m]);
+                state.tick();
+                for (int s = 0; s < ships; s++) {
+                    Ship ship = state.getShip(s);
+                    int at = m * ships + s;
+                    int score = ship.getScore();
+                    int hit = ship.getHits();
+                    rewards[at] = (score - scores[at]) * SCORE_REWARD + (hit - hits[at]) * HIT_REWARD;
+                    scores[at] = score;
+                    hits[at] = hit;
+                }
+                dones[m] = state.isOver();
+                if (dones[m]) {
+                    this.start(m);
+                } else {
+                    this.observe(m);
+                }
+            }
+        }
+
+        /**
+         * Puts a new match in a slot, with the slot's next seed, and writes its first observation
+         * @param m index of the match
+         */
+        void start(int m) {
+            states[m] = new GameState(settings, seeds[m].nextLong());
+            for (int s = 0; s < ships; s++) {
+                scores[m * ships + s] = 0;
+                hits[m * ships + s] = 0;
+            }
+            this.observe(m);
+        }
+
+        /**
+         * Writes what the ships of a match can see into its part of the observation buffer
+         * @param m index of the match
+         */
+        private void observe(int m) {
+            GameState state = states[m];
+            int at = m * observationSize;
+            observations.put(at, 1f - (float) state.getTickCount() / state.getMatchTicks());
+            for (int s = 0; s < ships; s++) {
+                this.observeShip(state.getAsteroids(), state.getShip(s), at + 1 + s * SHIP_FLOATS);
+            }
+        }
+
+        /**
+         * Writes a ship's position and the NEAREST asteroids closest to it. The grid's cells are searched a ring at a
+         * time outwards from the ship's cell, keeping the closest seen so far in order, until the next ring is too far
+         * away to hold anything closer than the last of them. Asteroids the same distance away are kept in index
+         * order, so the result is the same as going through the whole field
+         * @param field asteroids of the ship's match
+         * @param ship ship to observe
+         * @param at index in the observation buffer to write from
+         */
+        private void observeShip(AsteroidField field, Ship ship, int at) {
+            int sx = ship.getX();
+            int sy = ship.getY();
+            AsteroidGrid grid = field.getGrid();
+            int col = grid.colFor(sx);
+            int row = grid.rowFor(sy);
+            int cols = grid.getCols();
+            int rows = grid.getRows();
+            int reach = Math.max(Math.max(col, cols - 1 - col), Math.max(row, rows - 1 - row));
+            int found = 0;
+            for (int ring = 0; ring <= reach; ring++) {
+                // every cell in the ring is ring cells away on at least one axis, so anything in it is more than
+                // ring - 1 whole cells away from the ship wherever the ship is in its own cell
+                long gap = (long) (ring - 1) * AsteroidGrid.CELL_SIZE;
+                if (found == NEAREST && ring > 0 && gap * gap >= this.distances[NEAREST - 1]) {
+                    break;
+                }
+                for (int r = Math.max(0, row - ring); r <= Math.min(rows - 1, row + ring); r++) {
+                    boolean edge = r == row - ring || r == row + ring;
+                    int step = edge || ring == 0 ? 1 : 2 * ring;
+                    for (int c = col - ring; c <= col + ring; c += step) {
+                        if (c < 0 || c >= cols) {
+                            continue;
+                        }
+                        for (int i = grid.first(c, r); i != -1; i = grid.next(i)) {
+                            long ox = field.getX(i) - sx;
+                            long oy = field.getY(i) - sy;
+                            found = this.offer(i, ox * ox + oy * oy, found);
+                        }
+                    }
+                }
+            }
+
+            observations.put(at, (float) sx / WIDTH);
+            observations.put(at + 1, (float) sy / HEIGHT);
+            for (int k = 0; k < NEAREST; k++) {
+                int slot = at + 2 + 3 * k;
+                if (k < found) {
+                    int i = this.nearest[k];
+                    observations.put(slot, (float) (field.getX(i) - sx) / WIDTH);
+                    observations.put(slot + 1, (float) (field.getY(i) - sy) / HEIGHT);
+                    observations.put(slot + 2, field.isGoingLeft(i) ? -1f : 1f);
+                } else {
+                    observations.put(slot, 0f);
+                    observations.put(slot + 1, 0f);
+                    observations.put(slot + 2, 0f);
+                }
+            }
+        }
+
+        /**
+         * Puts an asteroid in its place among the nearest found so far, if it is closer than the last of them
+         * @param i index of the asteroid
+         * @param distance squared distance from the ship to the asteroid
+         * @param found number of asteroids found so far
+         * @return number of asteroids found now
+         */
+        private int offer(int i, long distance, int found) {
+            if (found == NEAREST && !this.closer(i, distance, NEAREST - 1)) {
+                return found;
+            }
+            int j = found < NEAREST ? found++ : NEAREST - 1;
+            for (; j > 0 && this.closer(i, distance, j - 1); j--) {
+                this.distances[j] = this.distances[j - 1];
+                this.nearest[j] = this.nearest[j - 1];
+            }
+            this.distances[j] = distance;
+            this.nearest[j] = i;
+            return found;
+        }
+
+        /**
+         * @param i index of an asteroid
+         * @param distance squared distance from the ship to the asteroid
+         * @param k place among the nearest found so far
+         * @return whether the asteroid is closer than the one at that place, or as close with a lower index
+         */
+        private boolean closer(int i, long distance, int k) {
+            return distance < this.distances[k] || (distance == this.distances[k] && i < this.nearest[k]);
+        }
+
+    }
+
+}
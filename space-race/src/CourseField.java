@@ -0,0 +1,271 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This is the CourseField class. It holds the asteroids of a long course: a playing field many windows tall that the
+ * ships climb through, with the view scrolling to follow each one. The course is split into AsteroidChunks, bands of
+ * CHUNK_HEIGHT pixels each, and only the chunks near a ship are ever held in memory. A chunk is generated when a ship
+ * comes within NEAR_CHUNKS of it and evicted once every ship has left it behind, so a course can be millions of pixels
+ * tall, with as many asteroids as that takes, while the memory used stays the same.
+ *
+ * Chunks are kept in a fixed ring of slots sized from the number of ships: a block of BLOCK_SLOTS slots for each ship
+ * and one for the bottom of the course, with the chunks near ship s in block s, chunk i in slot i % BLOCK_SLOTS of the
+ * block. The chunks near one ship are never more than BLOCK_SLOTS apart, so they never share a slot however far apart
+ * the ships are, and two ships near each other simply hold a copy each. Since a chunk depends only on the seed and its
+ * index, generating one is safe on any thread, and an evicted chunk comes back the same if a ship returns to it.
+ * focus() is called on every tick: it evicts the chunks no ship is near and hands the ones a ship is approaching to a
+ * background thread, so they are normally generated well before anything needs them. If a chunk is needed before the
+ * background thread gets to it, it is generated on the spot, with the same result, so how fast the background thread
+ * runs never changes how a match plays out. A chunk the background thread finishes after its slot has been given to
+ * another chunk is thrown away rather than stored.
+ */
+public class CourseField {
+
+    public static final int NEAR_CHUNKS = 4; // chunks above and below a ship that are kept ready
+    public static final int BLOCK_SLOTS = 16; // slots for each ship's chunks, a power of two above 2 * NEAR_CHUNKS
+
+    private static final ExecutorService GENERATOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "course-generator");
+        thread.setDaemon(true);
+        return thread;
+    }); // thread chunks are generated on ahead of need
+
+    private final long seed; // seed of the match, which every chunk is generated from
+    private final int width; // width of the playing field
+    private final long height; // height of the whole course
+    private final long chunkCount; // number of chunks the course is split into
+    private final AtomicReferenceArray<AsteroidChunk> slots; // chunks held, one block per ship and one for the bottom
+    private final AtomicLongArray requested; // chunk last asked for in each slot, or -1, read by the generator
+    private final Runnable[] generators; // task generating the chunk each slot is asked for, reused for every request
+    private final long[] centres; // chunk each block is centred on, its ship's or the bottom of the course
+    private int generated; // chunks generated on the calling thread because the generator hadn't got to them yet
+
+    /**
+     * Constructor for a course with no chunks generated yet
+     * @param seed seed of the match
+     * @param width width of the playing field
+     * @param height height of the whole course
+     * @param ships number of ships racing up the course
+     */
+    public CourseField(long seed, int width, long height, int ships) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.chunkCount = (height + AsteroidChunk.CHUNK_HEIGHT - 1) / AsteroidChunk.CHUNK_HEIGHT;
+        int blocks = Math.max(1, ships) + 1;
+        this.slots = new AtomicReferenceArray<>(blocks * BLOCK_SLOTS);
+        this.requested = new AtomicLongArray(blocks * BLOCK_SLOTS);
+        this.generators = new Runnable[blocks * BLOCK_SLOTS];
+        for (int slot = 0; slot < this.requested.length(); slot++) {
+            this.requested.set(slot, -1);
+            int task = slot;
+            this.generators[slot] = () -> this.generate(task);
+        }
+        this.centres = new long[blocks];
+        Arrays.fill(this.centres, this.chunkAt(height - 1)); // every ship starts at the bottom
+    }
+
+    /**
+     * Evicts the chunks that no ship is near and starts generating the ones a ship is coming up to. The chunks around
+     * the bottom of the course, where ships respawn, are always kept. Should be called from the thread ticking the
+     * match
+     * @param ships ships moving through the course
+     */
+    public void focus(Ship[] ships) {
+        int blocks = this.centres.length;
+        for (int b = 0; b < blocks - 1; b++) {
+            this.centres[b] = b < ships.length ? this.chunkAt(ships[b].getY()) : this.centres[blocks - 1];
+        }
+        for (int slot = 0; slot < this.slots.length(); slot++) {
+            AsteroidChunk chunk = this.slots.get(slot);
+            if (chunk != null && Math.abs(chunk.getIndex() - this.centres[slot / BLOCK_SLOTS]) > NEAR_CHUNKS) {
+                this.requested.set(slot, -1);
+                this.slots.compareAndSet(slot, chunk, null);
+            }
+        }
+        for (int b = 0; b < blocks; b++) {
+            long first = Math.max(0, this.centres[b] - NEAR_CHUNKS);
+            long last = Math.min(this.chunkCount - 1, this.centres[b] + NEAR_CHUNKS);
+            for (long index = first; index <= last; index++) {
+                int slot = slotOf(b, index);
+                AsteroidChunk chunk = this.slots.get(slot);
+                if ((chunk == null || chunk.getIndex() != index) && this.requested.get(slot) != index) {
+                    this.requested.set(slot, index);
+                    GENERATOR.execute(this.generators[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds a chunk, generating it on the calling thread if it isn't held yet. A chunk generated here is kept in the
+     * block of the first ship it is near, if there is one. Should be called from the thread ticking the match
+     * @param index position of the chunk, counting down from the top of the course
+     * @return the chunk
+     */
+    public AsteroidChunk chunk(long index) {
+        int home = -1; // slot the chunk belongs in, if it is near a ship or the bottom
+        for (int b = 0; b < this.centres.length; b++) {
+            int slot = slotOf(b, index);
+            AsteroidChunk chunk = this.slots.get(slot);
+            if (chunk != null && chunk.getIndex() == index) {
+                return chunk;
+            }
+            if (home == -1 && Math.abs(index - this.centres[b]) <= NEAR_CHUNKS) {
+                home = slot;
+            }
+        }
+        this.generated++;
+        if (home == -1) {
+            return new AsteroidChunk(this.seed, index, this.width, this.height);
+        }
+        return this.store(home, index, false);
+    }
+
+    /**
+     * Checks every asteroid near the ships against them, as they are on a tick
+     * @param ships ships to check
+     * @param tick tick to place the asteroids at
+     * @return bitmask of the ships that were hit, bit s set if ships[s] was
+     */
+    public int collide(Ship[] ships, long tick) {
+        int hits = 0;
+        for (int s = 0; s < ships.length; s++) {
+            if (this.collides(ships[s], tick)) {
+                hits |= 1 << s;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Checks the asteroids in the chunks a ship's triangle overlaps against it
+     * @param ship ship to check
+     * @param tick tick to place the asteroids at
+     * @return whether any asteroid has hit the ship
+     */
+    public boolean collides(Ship ship, long tick) {
+        int top = ship.getY() - ship.getNoseOffset();
+        int bottom = ship.getY() + ship.getBaseOffset();
+        int left = ship.getX() - ship.getHalfWidth();
+        int right = ship.getX() + ship.getHalfWidth();
+        long first = Math.max(0, this.chunkAt(top));
+        long last = Math.min(this.chunkCount - 1, this.chunkAt(bottom));
+        for (long index = first; index <= last; index++) {
+            AsteroidChunk chunk = this.chunk(index);
+            for (int i = 0; i < chunk.size(); i++) {
+                int ay = chunk.getY(i);
+                if (ay < top || ay > bottom) {
+                    continue;
+                }
+                int ax = chunk.getX(i, tick);
+                if (ax >= left && ax <= right && ship.collision(ax, ay)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param y a y position on the course
+     * @return index of the chunk covering it
+     */
+    public long chunkAt(long y) {
+        return Math.floorDiv(y, AsteroidChunk.CHUNK_HEIGHT);
+    }
+
+    /**
+     * @return number of chunks currently held in memory
+     */
+    public int getHeldChunks() {
+        int held = 0;
+        for (int slot = 0; slot < this.slots.length(); slot++) {
+            if (this.slots.get(slot) != null) {
+                held++;
+            }
+        }
+        return held;
+    }
+
+    /**
+     * @return number of chunks that had to be generated on the calling thread
+     */
+    public int getGeneratedInline() {
+        return generated;
+    }
+
+    /**
+     * @return number of chunks the course is split into
+     */
+    public long getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @return height of the whole course
+     */
+    public long getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of chunks that can be held at once
+     */
+    public int getSlots() {
+        return slots.length();
+    }
+
+    /**
+     * Generates the chunk a slot is asked for when the background thread gets to the slot's task. The slot may have
+     * been asked for a newer chunk since the task was submitted, which is then the one generated; any tasks still
+     * queued for the slot find it already stored
+     * @param slot slot to fill
+     */
+    private void generate(int slot) {
+        long index = this.requested.get(slot);
+        if (index >= 0) {
+            this.store(slot, index, true);
+        }
+    }
+
+    /**
+     * Generates a chunk and puts it in a slot, unless that slot already holds it. The background thread only stores a
+     * chunk while the slot is still asked for it, so a chunk it finishes late never replaces one the slot has been
+     * given to since; the thread ticking the match asks for the chunk itself before storing it
+     * @param slot slot the chunk belongs in
+     * @param index position of the chunk
+     * @param background whether this is the background thread, rather than the thread ticking the match
+     * @return the chunk, or null if the background thread found the slot had been given to another chunk
+     */
+    private AsteroidChunk store(int slot, long index, boolean background) {
+        AsteroidChunk held = this.slots.get(slot);
+        if (held != null && held.getIndex() == index) {
+            return held;
+        }
+        if (!background) {
+            this.requested.set(slot, index);
+        } else if (this.requested.get(slot) != index) {
+            return null;
+        }
+        AsteroidChunk chunk = new AsteroidChunk(this.seed, index, this.width, this.height);
+        while (!this.slots.compareAndSet(slot, held, chunk)) {
+            held = this.slots.get(slot);
+            if (background && this.requested.get(slot) != index) {
+                return null;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * @return slot a chunk is kept in within a block
+     */
+    private static int slotOf(int block, long index) {
+        return block * BLOCK_SLOTS + (int) (index & (BLOCK_SLOTS - 1));
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * This is the FixedStepLoop class. It decides how many game ticks to run each time a frame is drawn, so that the game
+ * advances at a constant number of ticks per second no matter how fast or slow frames are drawn. Time that has passed
+ * since the last frame is added to an accumulator, and one tick is taken out of it for every tick that gets run.
+ *
+ * If drawing falls behind, several ticks are run before the next frame (frame skip), up to a limit so that one very
+ * slow frame can't make the game spend even longer catching up. Whatever time is left in the accumulator is less than
+ * one tick, and alpha() gives it as a fraction so the renderer can draw objects between their last two positions.
+ */
+public class FixedStepLoop {
+
+    private final long tickNanos; // length of one tick in nanoseconds
+    private final int maxTicksPerFrame; // most ticks run before a frame is drawn
+    private long lastTime; // time of the previous call to advance(), once started
+    private boolean started; // whether advance() has been called yet, as System.nanoTime() can be any value at all
+    private long accumulator; // time that has passed but hasn't been simulated yet
+
+    /**
+     * Constructor for a loop running a fixed number of ticks per second
+     * @param ticksPerSecond ticks to run in every second of real time
+     * @param maxTicksPerFrame most ticks to run before a frame is drawn, any more are dropped and the game slows down
+     */
+    public FixedStepLoop(int ticksPerSecond, int maxTicksPerFrame) {
+        this.tickNanos = 1_000_000_000L / ticksPerSecond;
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    /**
+     * Adds the time passed since the last call to the accumulator and works out how many ticks are due. The first
+     * call always runs exactly one tick
+     * @param now the current time from System.nanoTime()
+     * @return the number of ticks to run before drawing this frame
+     */
+    public int advance(long now) {
+        if (!this.started) {
+            this.started = true;
+            this.lastTime = now;
+            return 1;
+        }
+        this.accumulator += now - this.lastTime;
+        this.lastTime = now;
+
+        int ticks = (int) Math.min(this.accumulator / this.tickNanos, this.maxTicksPerFrame);
+        this.accumulator -= ticks * this.tickNanos;
+
+        // drops time that there was no room to simulate, so the loop doesn't keep trying to catch up with it
+        if (this.accumulator >= this.tickNanos) {
+            this.accumulator = this.tickNanos - 1;
+        }
+        return ticks;
+    }
+
+    /**
+     * @return how far the current time is between the last tick and the next one, from 0 to just under 1
+     */
+    public float alpha() {
+        return (float) this.accumulator / this.tickNanos;
+    }
+
+}
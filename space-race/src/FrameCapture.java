@@ -0,0 +1,249 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This is the FrameCapture class. It saves the frames of a match, either as a numbered sequence of PNG files in a
+ * folder or as one uncompressed YUV4MPEG2 (".y4m") video that players such as mpv and ffmpeg open directly, without
+ * slowing down the thread drawing them.
+ *
+ * A fixed pool of frame buffers is made up front. capture() takes a free buffer, copies the frame's pixels into it and
+ * hands it to a pool of encoder threads, so all the game thread does is one array copy, and it only ever waits when
+ * every buffer is still being encoded. Each encoder thread turns its frame into a PNG file or into the video's YUV
+ * planes and then puts the buffer back in the pool. PNG files can be written in any order, but video frames must be
+ * written one after another, so each encoder converts its frame in parallel with the others and then waits its turn
+ * to write it.
+ */
+public class FrameCapture implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFERS = 16; // frames that can be waiting to be encoded at once
+    public static final int FRAMES_PER_SECOND = GameState.TICKS_PER_SECOND; // frame rate written in the video header
+
+    private final Path path; // folder the PNG files are written to, or the video file
+    private final boolean video; // whether frames go into one video file, otherwise into PNG files
+    private final int width; // width of every frame
+    private final int height; // height of every frame
+    private final BlockingQueue<Frame> free; // buffers ready to be captured into
+    private final BlockingQueue<Frame> full; // captured frames waiting for an encoder, and one stop marker per encoder
+    private final Thread[] encoders; // threads encoding and writing frames
+    private final OutputStream out; // the video file, or null when writing PNG files
+    private final Object turn = new Object(); // lock the encoders wait on for their turn to write a video frame
+    private long nextWritten; // index of the next video frame to be written, guarded by turn
+    private long captured; // frames captured so far
+    private volatile boolean failed; // whether writing any frame has failed
+
+    /**
+     * Constructor that creates the output and starts an encoder thread per core
+     * @param path a file ending in ".y4m" to write a video to, or a folder to write PNG files to (created if needed)
+     * @param width width of every frame
+     * @param height height of every frame
+     * @param buffers number of frame buffers, the most frames that can be waiting to be encoded
+     * @throws IOException if the output can't be created
+     */
+    public FrameCapture(Path path, int width, int height, int buffers) throws IOException {
+        this.path = path;
+        this.video = path.toString().endsWith(".y4m");
+        this.width = width;
+        this.height = height;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.free = new ArrayBlockingQueue<>(buffers);
+        this.full = new ArrayBlockingQueue<>(buffers + threads);
+        for (int b = 0; b < buffers; b++) {
+            this.free.add(new Frame(width * height));
+        }
+        if (this.video) {
+            this.out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 20);
+            String header = "YUV4MPEG2 W" + width + " H" + height + " F" + FRAMES_PER_SECOND + ":1 Ip A1:1 C444\n";
+            this.out.write(header.getBytes(StandardCharsets.US_ASCII));
+        } else {
+            Files.createDirectories(path);
+            this.out = null;
+        }
+        this.encoders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            this.encoders[t] = new Thread(this::encode, "frame-encoder-" + t);
+            this.encoders[t].setDaemon(true);
+            this.encoders[t].start();
+        }
+    }
+
+    /**
+     * Copies a frame and queues it to be written. Waits only if every buffer is still waiting to be encoded
+     * @param pixels the frame as ARGB pixels, row by row, width * height of them
+     */
+    public void capture(int[] pixels) {
+        try {
+            Frame frame = this.free.take();
+            System.arraycopy(pixels, 0, frame.pixels, 0, frame.pixels.length);
+            frame.index = this.captured++;
+            this.full.put(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of frames captured so far
+     */
+    public long getCaptured() {
+        return captured;
+    }
+
+    /**
+     * @return the folder or video file being written to
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Waits for every captured frame to be written, then stops the encoders and closes the video file
+     * @throws IOException if the video can't be closed, or any frame couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (int t = 0; t < this.encoders.length; t++) {
+                this.full.put(new Frame(0)); // an empty frame tells one encoder to stop
+            }
+            for (Thread encoder : this.encoders) {
+                encoder.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.out != null) {
+            this.out.close();
+        }
+        if (this.failed) {
+            throw new IOException("Some frames couldn't be written to " + this.path);
+        }
+    }
+
+    /**
+     * Takes captured frames and writes them until told to stop. Each encoder keeps its own image and planes, so
+     * encoding allocates nothing apart from what ImageIO does itself
+     */
+    private void encode() {
+        BufferedImage image = null;
+        ImageWriter writer = null;
+        ImageWriteParam param = null;
+        byte[] planes = null;
+        if (this.video) {
+            planes = new byte[3 * this.width * this.height];
+        } else {
+            image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+            writer = ImageIO.getImageWritersByFormatName("png").next();
+            param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                // favours speed over size, frames are written far faster than at the default level
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(0.8f);
+            }
+        }
+        try {
+            while (true) {
+                Frame frame = this.full.take();
+                if (frame.pixels.length == 0) {
+                    break;
+                }
+                try {
+                    if (this.video) {
+                        toYuv(frame.pixels, planes);
+                        this.write(frame.index, planes);
+                    } else {
+                        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                        System.arraycopy(frame.pixels, 0, data, 0, data.length);
+                        Path file = this.path.resolve(String.format("frame-%06d.png", frame.index));
+                        try (ImageOutputStream stream = ImageIO.createImageOutputStream(file.toFile())) {
+                            writer.setOutput(stream);
+                            writer.write(null, new IIOImage(image, null, null), param);
+                        }
+                    }
+                } catch (IOException e) {
+                    if (!this.failed) {
+                        e.printStackTrace();
+                    }
+                    this.failed = true;
+                }
+                this.free.put(frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (writer != null) {
+                writer.dispose();
+            }
+        }
+    }
+
+    /**
+     * Waits until every earlier video frame has been written, then writes this one
+     * @param index index of the frame
+     * @param planes the frame's Y, U and V planes
+     */
+    private void write(long index, byte[] planes) throws InterruptedException {
+        synchronized (this.turn) {
+            while (this.nextWritten != index) {
+                this.turn.wait();
+            }
+            try {
+                if (!this.failed) {
+                    this.out.write("FRAME\n".getBytes(StandardCharsets.US_ASCII));
+                    this.out.write(planes);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                this.failed = true;
+            } finally {
+                this.nextWritten++;
+                this.turn.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Converts RGB pixels to full size Y, U and V planes, one after another, with the BT.601 studio range formulas
+     * @param pixels ARGB pixels
+     * @param planes receives 3 bytes per pixel
+     */
+    private static void toYuv(int[] pixels, byte[] planes) {
+        int n = pixels.length;
+        for (int i = 0; i < n; i++) {
+            int c = pixels[i];
+            int r = (c >> 16) & 0xFF;
+            int g = (c >> 8) & 0xFF;
+            int b = c & 0xFF;
+            planes[i] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+            planes[n + i] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+            planes[2 * n + i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+        }
+    }
+
+    /**
+     * A frame buffer and the index of the frame it holds
+     */
+    private static class Frame {
+
+        final int[] pixels; // the frame's pixels, or none for the marker that stops an encoder
+        long index; // position of the frame in the capture
+
+        Frame(int size) {
+            this.pixels = new int[size];
+        }
+
+    }
+
+}
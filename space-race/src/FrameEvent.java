@@ -0,0 +1,46 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This is the FrameEvent class. FrameProfiler commits one of these to Java Flight Recorder for every frame while a
+ * recording is running, so a frame's phases can be lined up with JFR's own garbage collection and safepoint events.
+ * When no recording is running the event is never created.
+ */
+@Name("spacerace.Frame")
+@Label("Frame")
+@Category("Space Race")
+@Description("Time spent in each phase of one frame")
+public class FrameEvent extends Event {
+
+    @Label("Ticks")
+    public int ticks; // number of ticks simulated in the frame
+
+    @Label("Input")
+    @Timespan(Timespan.NANOSECONDS)
+    public long input; // time spent applying input
+
+    @Label("Ship Update")
+    @Timespan(Timespan.NANOSECONDS)
+    public long ships; // time spent moving and scoring ships
+
+    @Label("Asteroid Update")
+    @Timespan(Timespan.NANOSECONDS)
+    public long asteroids; // time spent moving asteroids
+
+    @Label("Collision")
+    @Timespan(Timespan.NANOSECONDS)
+    public long collision; // time spent checking ships against asteroids
+
+    @Label("Timer")
+    @Timespan(Timespan.NANOSECONDS)
+    public long timer; // time spent counting down the timer
+
+    @Label("Render")
+    @Timespan(Timespan.NANOSECONDS)
+    public long render; // time spent drawing the frame
+
+}
@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * This is the FrameProfiler class. It times each phase of a frame (applying input, updating the ships, moving the
+ * asteroids, checking collisions, counting down the timer and drawing) and keeps a LatencyHistogram of each, so that
+ * when the game stutters it can be seen which phase the time went to. A phase is timed by calling mark() at the end of
+ * it: the time since the previous mark is added to that phase, so timing costs one System.nanoTime() per phase and
+ * never allocates. Phases run once per tick are summed over all of the ticks in a frame.
+ *
+ * At the end of every frame the phase totals go into the histograms and, while a Java Flight Recorder recording is
+ * running, into a FrameEvent. A separate histogram keeps the time from each key press to the end of the frame that
+ * first showed it (see recordInputLatency()). The histograms can be drawn as an overlay (see getSummary()) and written
+ * out as CSV.
+ * A disabled profiler ignores every call, so the game can always call it.
+ */
+public class FrameProfiler {
+
+    public static final int INPUT = 0; // phase: applying each tick's input
+    public static final int SHIPS = 1; // phase: moving and scoring the ships
+    public static final int ASTEROIDS = 2; // phase: moving the asteroids
+    public static final int COLLISION = 3; // phase: checking the ships against the asteroids
+    public static final int TIMER = 4; // phase: counting down the timer
+    public static final int RENDER = 5; // phase: drawing the frame
+    public static final int PHASES = 6; // number of phases
+    private static final String[] PHASE_NAMES = { "input", "ship update", "asteroid update", "collision", "timer",
+            "render" }; // name of each phase, as shown in the overlay and CSV
+    private static final int SUMMARY_FRAMES = 30; // frames between rebuilding the overlay text
+
+    private final boolean enabled; // whether any calls do anything
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASES]; // time per frame spent in each phase
+    private final LatencyHistogram frames = new LatencyHistogram(); // total time of each frame
+    private final LatencyHistogram inputLatency = new LatencyHistogram(); // time from each input to its frame's end
+    private final long[] current = new long[PHASES]; // time spent in each phase so far this frame
+    private int ticks; // ticks simulated so far this frame
+    private long frameStart; // time the current frame began
+    private long lastMark; // time of the previous mark
+    private long lastFrameStart; // time the previous frame began, or 0 before the first frame
+    private double frameInterval; // smoothed time between the starts of frames, used for fps
+    private int framesSinceSummary; // frames since the overlay text was last rebuilt
+    private String summary = ""; // overlay text
+    private EventType frameEvent; // to check JFR is recording, looked up once JFR has started as starting it is slow
+
+    /**
+     * Constructor for a profiler
+     * @param enabled whether to record anything, a disabled profiler costs a branch per call
+     */
+    public FrameProfiler(boolean enabled) {
+        this.enabled = enabled;
+        for (int p = 0; p < PHASES; p++) {
+            this.phases[p] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return whether the profiler records anything
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a new frame
+     */
+    public void beginFrame() {
+        if (!this.enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (this.lastFrameStart != 0) {
+            long interval = now - this.lastFrameStart;
+            this.frameInterval = this.frameInterval == 0 ? interval : this.frameInterval * 0.9 + interval * 0.1;
+        }
+        this.lastFrameStart = now;
+        this.frameStart = now;
+        this.lastMark = now;
+        this.ticks = 0;
+        for (int p = 0; p < PHASES; p++) {
+            this.current[p] = 0;
+        }
+    }
+
+    /**
+     * Adds the time since the previous mark (or the start of the frame) to a phase
+     * @param phase the phase that has just finished
+     */
+    public void mark(int phase) {
+        if (!this.enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        this.current[phase] += now - this.lastMark;
+        this.lastMark = now;
+        if (phase == TIMER) {
+            this.ticks++; // the timer is the last phase of a tick
+        }
+    }
+
+    /**
+     * Finishes the frame, adding its phase totals to the histograms and to Java Flight Recorder
+     */
+    public void endFrame() {
+        if (!this.enabled) {
+            return;
+        }
+        for (int p = 0; p < PHASES; p++) {
+            this.phases[p].record(this.current[p]);
+        }
+        this.frames.record(System.nanoTime() - this.frameStart);
+
+        if (this.frameEvent == null && FlightRecorder.isInitialized()) {
+            this.frameEvent = EventType.getEventType(FrameEvent.class);
+        }
+        if (this.frameEvent != null && this.frameEvent.isEnabled()) {
+            FrameEvent event = new FrameEvent();
+            event.ticks = this.ticks;
+            event.input = this.current[INPUT];
+            event.ships = this.current[SHIPS];
+            event.asteroids = this.current[ASTEROIDS];
+            event.collision = this.current[COLLISION];
+            event.timer = this.current[TIMER];
+            event.render = this.current[RENDER];
+            event.commit();
+        }
+        this.framesSinceSummary++;
+    }
+
+    /**
+     * Records how long after an input was received the frame showing its effect finished drawing
+     * @param nanos time from the input to the end of the frame
+     */
+    public void recordInputLatency(long nanos) {
+        if (this.enabled) {
+            this.inputLatency.record(nanos);
+        }
+    }
+
+    /**
+     * @return frames per second, averaged over roughly the last ten frames
+     */
+    public double getFps() {
+        return this.frameInterval == 0 ? 0 : 1e9 / this.frameInterval;
+    }
+
+    /**
+     * Text for the overlay: the fps, then the p50, p99 and max time of each phase, of whole frames and from input to
+     * frame in milliseconds. The text is only rebuilt every SUMMARY_FRAMES frames, so showing it doesn't allocate every
+     * frame
+     * @return the overlay text
+     */
+    public String getSummary() {
+        if (this.framesSinceSummary >= SUMMARY_FRAMES || this.summary.isEmpty()) {
+            StringBuilder text = new StringBuilder(512);
+            text.append(String.format("%.1f fps%n%-16s %7s %7s %7s%n", this.getFps(), "ms", "p50", "p99", "max"));
+            for (int p = 0; p < PHASES; p++) {
+                appendRow(text, PHASE_NAMES[p], this.phases[p]);
+            }
+            appendRow(text, "frame", this.frames);
+            appendRow(text, "input to frame", this.inputLatency);
+            this.summary = text.toString();
+            this.framesSinceSummary = 0;
+        }
+        return this.summary;
+    }
+
+    /**
+     * Writes the count, mean, p50, p90, p99, p99.9 and max (in microseconds) of each phase, of whole frames and of the
+     * time from input to frame, whose count is the number of inputs rather than frames
+     * @param path CSV file to write
+     * @throws IOException if the file can't be written
+     */
+    public void writeCsv(Path path) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path))) {
+            out.println("phase,frames,mean_us,p50_us,p90_us,p99_us,p999_us,max_us");
+            for (int p = 0; p < PHASES; p++) {
+                writeRow(out, PHASE_NAMES[p], this.phases[p]);
+            }
+            writeRow(out, "frame", this.frames);
+            writeRow(out, "input to frame", this.inputLatency);
+        }
+    }
+
+    private static void appendRow(StringBuilder text, String name, LatencyHistogram histogram) {
+        text.append(String.format("%-16s %7.2f %7.2f %7.2f%n", name, histogram.percentile(50) / 1e6,
+                histogram.percentile(99) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    private static void writeRow(PrintWriter out, String name, LatencyHistogram histogram) {
+        out.printf(Locale.ROOT, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n", name, histogram.getCount(),
+                histogram.getMean() / 1e3, histogram.percentile(50) / 1e3, histogram.percentile(90) / 1e3,
+                histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3, histogram.getMax() / 1e3);
+    }
+
+}
@@ -0,0 +1,33 @@
+/**
+ * This is the GameSnapshot class. It holds a copy of everything in a GameState that changes during a match (the ships,
+ * the timer, the scheduled events, the x position of every asteroid, the random number generator and the tick count)
+ * in arrays sized for that state. Saving into and restoring from a snapshot is then only a handful of array copies,
+ * and never allocates once the first save has sized the arrays, so the game can be rewound and replayed many times a
+ * frame. See GameState.save() and restore().
+ */
+public class GameSnapshot {
+
+    long tick = -1; // tick count of the state when it was saved, or -1 if nothing has been saved yet
+    long rngState; // state of the match's random number generator
+    final int[] ships; // every ship's state, Ship.STATE_INTS ints per ship
+    final int[] timer = new int[Timer.STATE_INTS]; // the timer's state
+    final TickWheel wheel = new TickWheel(1); // copy of the events scheduled, grown to match the state's on first save
+    final int[] asteroidX; // x position of every asteroid
+
+    /**
+     * Constructor for an empty snapshot with room for one state's ships and asteroids
+     * @param state the state this snapshot will be used with
+     */
+    public GameSnapshot(GameState state) {
+        this.ships = new int[state.getShipCount() * Ship.STATE_INTS];
+        this.asteroidX = new int[state.getAsteroids().size()];
+    }
+
+    /**
+     * @return tick count of the state when it was saved, or -1 if nothing has been saved yet
+     */
+    public long getTick() {
+        return tick;
+    }
+
+}
@@ -0,0 +1,374 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This is the GameState class. It holds everything needed to play a match of Space Race (the ships, two unless more
+ * are asked for, the asteroid field and the timer) without any reference to a Processing window, so a match can be
+ * stepped headlessly as fast as the CPU allows. Each call to tick() advances the game by exactly one frame of the
+ * original game: ships move, asteroids move, collisions and scores are resolved and the timer counts down. Race only
+ * reads this state to draw it.
+ *
+ * All randomness comes from an Rng seeded in the constructor, so two GameStates built with the same seed and given the
+ * same inputs on the same ticks play out identically.
+ *
+ * Anything that should happen a number of ticks in the future (so far, each step of the timer bar) is scheduled as an
+ * event on a TickWheel, which is advanced once per tick and fires only the events due on that tick. Nothing polls the
+ * clock or counts down on every tick, however many events are waiting.
+ *
+ * On a long course the playing field is many windows tall and its asteroids come from a CourseField, which only holds
+ * the chunks of the course near the ships. The window-sized AsteroidField is then left empty.
+ */
+public class GameState {
+
+    public static final int TICKS_PER_SECOND = 60; // ticks simulated in one second of play
+    public static final int DEFAULT_MATCH_TICKS = 3750; // length of a match unless another is chosen, 62.5 seconds
+    public static final int MIN_MATCH_TICKS = 45 * TICKS_PER_SECOND; // shortest match, as on the original cabinet
+    public static final int MAX_MATCH_TICKS = 180 * TICKS_PER_SECOND; // longest match, as on the original cabinet
+    public static final int MAX_SHIPS = 8; // most ships in a match, each takes two bits of the input mask
+    public static final int EVENT_TIMER_STEP = 0; // event kind: the timer bar shrinks by a step
+
+    private final int width; // width of the playing field
+    private final int height; // height of the playing field
+    private final long seed; // seed the match's random numbers were generated from
+    private final int matchTicks; // number of ticks the match lasts
+    private final TickWheel wheel = new TickWheel(16); // events scheduled for future ticks
+    private final TickWheel.Handler handler = this::fire; // hands the wheel's events to fire()
+    private Rng rng; // source of every random number in the match
+    private Ship[] ships; // every ship from left to right, in the order used for collision and input bitmasks
+    private AsteroidField asteroids; // the asteroids in the field
+    private CourseField course; // the asteroids of the long course, or null when the match is played in one window
+    private ParallelAsteroidStep parallelStep; // moves the asteroids across several threads, or null to use one
+    private FrameProfiler profiler = new FrameProfiler(false); // times each phase of a tick, disabled by default
+    private Timer timer; // Timer object counting down the match
+    private long tickCount; // number of ticks simulated so far
+
+    /**
+     * Constructor for a GameState of the default length, see GameState(int, int, int, long, int)
+     * @param width width of the playing field
+     * @param height height of the playing field
+     * @param numAsteroids number of asteroid obstacles to create
+     * @param seed seed for the match's random numbers
+     */
+    public GameState(int width, int height, int numAsteroids, long seed) {
+        this(width, height, numAsteroids, seed, DEFAULT_MATCH_TICKS);
+    }
+
+    /**
+     * Constructor for a GameState played in one window, see GameState(int, int, int, long, int, int)
+     * @param width width of the playing field
+     * @param height height of the playing field
+     * @param numAsteroids number of asteroid obstacles to create
+     * @param seed seed for the match's random numbers
+     * @param matchTicks number of ticks the match lasts, kept between MIN_MATCH_TICKS and MAX_MATCH_TICKS
+     */
+    public GameState(int width, int height, int numAsteroids, long seed, int matchTicks) {
+        this(width, height, numAsteroids, seed, matchTicks, 0);
+    }
+
+    /**
+     * Constructor for a GameState with the usual ships, see GameState(MatchSettings, long)
+     * @param width width of the playing field
+     * @param height height of the playing field, when it isn't a long course
+     * @param numAsteroids number of asteroid obstacles to create, when the playing field isn't a long course
+     * @param seed seed for the match's random numbers
+     * @param matchTicks number of ticks the match lasts, kept between MIN_MATCH_TICKS and MAX_MATCH_TICKS
+     * @param courseHeight height of the long course the ships climb, or 0 to play the match in one window
+     */
+    public GameState(int width, int height, int numAsteroids, long seed, int matchTicks, int courseHeight) {
+        this(settings(width, height, numAsteroids, matchTicks, courseHeight), seed);
+    }
+
+    /**
+     * Constructor for a GameState, sets up the ships, the asteroid field and the timer for a new match
+     * @param settings size of the field, number of asteroids, length of the match and the number of ships, their speed
+     *                 and their size
+     * @param seed seed for the match's random numbers
+     */
+    public GameState(MatchSettings settings, long seed) {
+        int width = settings.getWidth();
+        int courseHeight = settings.getCourseHeight();
+        this.width = width;
+        this.height = courseHeight > 0 ? courseHeight : settings.getHeight();
+        this.seed = seed;
+        this.matchTicks = Math.max(MIN_MATCH_TICKS, Math.min(MAX_MATCH_TICKS, settings.getMatchTicks()));
+        this.rng = new Rng(seed);
+
+        // spaces the ships evenly across the field, each in the middle of its own column 45 pixels above the bottom, so
+        // two ships start 1/4 and 3/4 of the way across
+        int count = Math.max(1, Math.min(MAX_SHIPS, settings.getShips()));
+        this.ships = new Ship[count];
+        for (int s = 0; s < count; s++) {
+            this.ships[s] = new Ship(this, spawnX(width, count, s), this.height - 45, settings.getShipSpeed(),
+                    settings.getShipSize());
+        }
+        if (courseHeight > 0) {
+            this.asteroids = new AsteroidField(width, 0, 0, this.rng);
+            this.course = new CourseField(seed, width, courseHeight, count);
+        } else {
+            // creates the asteroid field
+            this.asteroids = new AsteroidField(width, settings.getHeight(), settings.getAsteroids(), this.rng);
+        }
+        this.timer = new Timer(this);
+        this.wheel.schedule(this.timer.ticksUntilNextStep(0), EVENT_TIMER_STEP, 0);
+    }
+
+    /**
+     * @param width width of the playing field
+     * @param count number of ships
+     * @param s index of a ship, from the left
+     * @return x position the ship starts at, in the middle of its share of the field
+     */
+    public static int spawnX(int width, int count, int s) {
+        return width * (2 * s + 1) / (2 * count);
+    }
+
+    /**
+     * @return settings for a match with the usual ships and the given field
+     */
+    private static MatchSettings settings(int width, int height, int numAsteroids, int matchTicks, int courseHeight) {
+        MatchSettings settings = new MatchSettings();
+        settings.setWidth(width);
+        settings.setHeight(height);
+        settings.setAsteroids(numAsteroids);
+        settings.setMatchTicks(matchTicks);
+        settings.setCourseHeight(courseHeight);
+        return settings;
+    }
+
+    /**
+     * Advances the match by one tick: moves every ship and scores it, moves every asteroid (on a long course, to
+     * where it is on the new tick) and respawns any ship an asteroid has hit, then fires any events due on this tick,
+     * such as the timer counting down. Does nothing once the timer has run out
+     */
+    public void tick() {
+        if (this.isOver()) {
+            return;
+        }
+        for (Ship ship : this.ships) {
+            ship.update();
+        }
+        this.profiler.mark(FrameProfiler.SHIPS);
+
+        // moves every asteroid and checks it against each ship, any ship that was hit is reset to the bottom. When the
+        // field is split across threads, moving and checking happen together and are timed as moving
+        int hits;
+        if (this.parallelStep != null) {
+            hits = this.parallelStep.step(this.ships);
+            this.profiler.mark(FrameProfiler.ASTEROIDS);
+        } else {
+            this.asteroids.move();
+            this.profiler.mark(FrameProfiler.ASTEROIDS);
+            hits = this.asteroids.collide(this.ships);
+        }
+        if (this.course != null) {
+            this.course.focus(this.ships);
+            hits |= this.course.collide(this.ships, this.tickCount + 1);
+        }
+        for (int s = 0; s < this.ships.length; s++) {
+            if ((hits & (1 << s)) != 0) {
+                this.ships[s].hit();
+            }
+        }
+        this.profiler.mark(FrameProfiler.COLLISION);
+        this.wheel.advance(this.handler);
+        this.tickCount++;
+        this.profiler.mark(FrameProfiler.TIMER);
+    }
+
+    /**
+     * Carries out an event from the wheel when it is due
+     * @param kind kind of the event, one of the EVENT constants
+     * @param arg argument the event was scheduled with
+     */
+    private void fire(int kind, int arg) {
+        if (kind == EVENT_TIMER_STEP) {
+            this.timer.step();
+            if (!this.timer.isTimeUp()) {
+                this.wheel.schedule(this.timer.ticksUntilNextStep(this.wheel.getNow()), EVENT_TIMER_STEP, 0);
+            }
+        }
+    }
+
+    /**
+     * Copies everything that changes during the match into a snapshot, without allocating
+     * @param snapshot snapshot created for this state to copy into
+     */
+    public void save(GameSnapshot snapshot) {
+        snapshot.tick = this.tickCount;
+        snapshot.rngState = this.rng.getState();
+        for (int s = 0; s < this.ships.length; s++) {
+            this.ships[s].save(snapshot.ships, s * Ship.STATE_INTS);
+        }
+        this.timer.save(snapshot.timer, 0);
+        snapshot.wheel.copyFrom(this.wheel);
+        this.asteroids.saveX(snapshot.asteroidX);
+    }
+
+    /**
+     * Puts the match back exactly as it was when a snapshot was saved, so ticking it again with the same inputs plays
+     * out the same way it did the first time
+     * @param snapshot snapshot previously saved from this state
+     */
+    public void restore(GameSnapshot snapshot) {
+        this.tickCount = snapshot.tick;
+        this.rng.setState(snapshot.rngState);
+        for (int s = 0; s < this.ships.length; s++) {
+            this.ships[s].restore(snapshot.ships, s * Ship.STATE_INTS);
+        }
+        this.timer.restore(snapshot.timer, 0);
+        this.wheel.copyFrom(snapshot.wheel);
+        this.asteroids.restoreX(snapshot.asteroidX);
+    }
+
+    /**
+     * @return number of ships in the match
+     */
+    public int getShipCount() {
+        return ships.length;
+    }
+
+    /**
+     * Moves the asteroid field across the threads of a pool on every tick from now on. The match plays out exactly the
+     * same as on one thread, only faster for fields of hundreds of thousands of asteroids
+     * @param pool threads to move the asteroids on, or null to go back to moving them on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.parallelStep = pool != null ? new ParallelAsteroidStep(this.asteroids, pool) : null;
+    }
+
+    /**
+     * @param profiler profiler to time each phase of every tick with
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * @return profiler timing each phase of every tick, disabled unless one was set
+     */
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Packs the movement state of every ship into one int, two bits per ship in the same order as the ships array:
+     * bit 2s is set if ship s is moving up and bit 2s + 1 if it is moving down. Reading this before every tick and
+     * handing it back to setInputMask() before the same tick is all it takes to replay a match
+     * @return the ships' movement state as a bitmask
+     */
+    public int getInputMask() {
+        int mask = 0;
+        for (int s = 0; s < this.ships.length; s++) {
+            if (this.ships[s].isUp()) {
+                mask |= 1 << (2 * s);
+            }
+            if (this.ships[s].isDown()) {
+                mask |= 1 << (2 * s + 1);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Sets the movement state of every ship from a bitmask laid out as in getInputMask()
+     * @param mask the ships' movement state as a bitmask
+     */
+    public void setInputMask(int mask) {
+        for (int s = 0; s < this.ships.length; s++) {
+            this.ships[s].setUp((mask & (1 << (2 * s))) != 0);
+            this.ships[s].setDown((mask & (1 << (2 * s + 1))) != 0);
+        }
+    }
+
+    /**
+     * @return whether the match has ended because the timer ran out
+     */
+    public boolean isOver() {
+        return this.timer.isTimeUp();
+    }
+
+    /**
+     * @return width of the playing field
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the playing field
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return seed the match's random numbers were generated from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return number of ticks the match lasts
+     */
+    public int getMatchTicks() {
+        return matchTicks;
+    }
+
+    /**
+     * @return the left-most ship, the left-side ship of a two player match
+     */
+    public Ship getLeftShip() {
+        return ships[0];
+    }
+
+    /**
+     * @return the right-most ship, the right-side ship of a two player match
+     */
+    public Ship getRightShip() {
+        return ships[ships.length - 1];
+    }
+
+    /**
+     * @param s index of a ship, from the left
+     * @return the ship
+     */
+    public Ship getShip(int s) {
+        return ships[s];
+    }
+
+    /**
+     * @return every ship from left to right, the same array every tick, not to be changed
+     */
+    public Ship[] getShips() {
+        return ships;
+    }
+
+    /**
+     * @return the asteroids in the field
+     */
+    public AsteroidField getAsteroids() {
+        return asteroids;
+    }
+
+    /**
+     * @return the asteroids of the long course, or null if the match is played in one window
+     */
+    public CourseField getCourse() {
+        return course;
+    }
+
+    /**
+     * @return the match timer
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+
+    /**
+     * @return number of ticks simulated so far
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+}
@@ -0,0 +1,81 @@
+import processing.core.PApplet;
+import processing.core.PFont;
+import processing.core.PGraphics;
+
+/**
+ * This is the Hud class. It keeps the score numbers and the timer bar drawn on a transparent offscreen layer the size
+ * of the window, and only redraws that layer when one of the scores or the bar has actually changed (a few times a
+ * second at most), instead of laying out and rasterizing the score text on every frame. The window then just draws
+ * the layer over the game.
+ *
+ * Each ship's score is shown under its own column of the window, towards the outside edge for the ships in the left
+ * and right halves, so two ships' scores sit near the two sides of the window.
+ */
+public class Hud {
+
+    private final PGraphics layer; // offscreen layer holding the scores and timer bar
+    private final PFont scoreText; // font the scores are drawn in
+    private final int[] scores = new int[GameState.MAX_SHIPS]; // each ship's score last drawn on the layer
+    private int ships = -1; // number of scores last drawn on the layer
+    private int barY = -1; // y position of the timer bar last drawn on the layer
+    private int barHeight = -1; // height of the timer bar last drawn on the layer
+    private boolean barRed; // whether the timer bar last drawn on the layer was red
+
+    /**
+     * Constructor for a Hud covering the whole window
+     * @param app the sketch the Hud will be drawn in
+     * @param scoreText font to draw the scores in
+     */
+    public Hud(PApplet app, PFont scoreText) {
+        this.layer = app.createGraphics(app.width, app.height);
+        this.scoreText = scoreText;
+    }
+
+    /**
+     * Redraws the layer if the scores or the timer bar have changed since it was last drawn
+     * @param ships every ship in the match, from left to right
+     * @param timer the match timer
+     * @return the layer, ready to be drawn over the game at (0, 0)
+     */
+    public PGraphics update(Ship[] ships, Timer timer) {
+        boolean changed = ships.length != this.ships;
+        for (int s = 0; s < ships.length && !changed; s++) {
+            changed = ships[s].getScore() != this.scores[s];
+        }
+        if (!changed && timer.getY() == this.barY && timer.getHeight() == this.barHeight
+                && timer.isRunningOut() == this.barRed) {
+            return this.layer;
+        }
+        this.ships = ships.length;
+        for (int s = 0; s < ships.length; s++) {
+            this.scores[s] = ships[s].getScore();
+        }
+        this.barY = timer.getY();
+        this.barHeight = timer.getHeight();
+        this.barRed = timer.isRunningOut();
+
+        PGraphics g = this.layer;
+        g.beginDraw();
+        g.clear();
+        g.noStroke();
+        g.textFont(this.scoreText);
+        g.fill(255);
+        for (int s = 0; s < this.ships; s++) {
+            int from = g.width * s / this.ships;
+            int column = g.width * (s + 1) / this.ships - from;
+            int x = 2 * s < this.ships - 1 ? from + column / 4 : from + column * 3 / 4;
+            g.text(Integer.toString(this.scores[s]), x, g.height - 45);
+        }
+
+        // the timer bar is green until it is about to run out and red after that
+        if (this.barRed) {
+            g.fill(255, 0, 0);
+        } else {
+            g.fill(0, 255, 0);
+        }
+        g.rect(timer.getX(), timer.getY(), timer.getWidth(), timer.getHeight());
+        g.endDraw();
+        return g;
+    }
+
+}
@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the InputQueue class. It carries key events from the thread that receives them (the AWT event thread) to the
+ * thread that runs the game, without locks and without allocating. It is a ring of preallocated slots with exactly one
+ * producer and one consumer: the producer writes an event into the slot after the last one and then publishes it by
+ * moving the tail on, and the consumer reads every published slot and then frees them by moving the head on. Each side
+ * only ever writes its own counter, so an ordered write and read of that counter is all the synchronization needed.
+ *
+ * Every event is kept, in order, with the System.nanoTime() it was received at, so a press and a release that both
+ * arrive between two ticks are both seen, and the time from a key press to the frame that shows it can be measured.
+ * If the game stops draining the queue for long enough that it fills, further events are counted and dropped.
+ */
+public class InputQueue {
+
+    /**
+     * Receives events as the queue is drained
+     */
+    public interface Sink {
+
+        /**
+         * @param event the event, as passed to offer()
+         * @param nanos System.nanoTime() when the event was offered
+         */
+        void accept(int event, long nanos);
+
+    }
+
+    private final int mask; // capacity - 1, to turn a position into a slot index
+    private final int[] events; // event in each slot
+    private final long[] times; // time each slot's event was offered
+    private final AtomicLong head = new AtomicLong(); // position of the next event to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // position of the next event to write, written by the producer
+    private long cachedHead; // producer's last read of head, so it only reads the consumer's counter when it looks full
+    private volatile int dropped; // events dropped because the queue was full, written by the producer
+
+    /**
+     * Constructor for an empty queue
+     * @param capacity most events the queue can hold, rounded up to a power of two
+     */
+    public InputQueue(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.events = new int[size];
+        this.times = new long[size];
+    }
+
+    /**
+     * Adds an event to the queue. Must only be called from the one producer thread
+     * @param event the event
+     * @param nanos System.nanoTime() when the event happened
+     * @return whether there was room for the event
+     */
+    public boolean offer(int event, long nanos) {
+        long tail = this.tail.getPlain();
+        if (tail - this.cachedHead > this.mask) {
+            this.cachedHead = this.head.getAcquire();
+            if (tail - this.cachedHead > this.mask) {
+                this.dropped = this.dropped + 1;
+                return false;
+            }
+        }
+        int slot = (int) tail & this.mask;
+        this.events[slot] = event;
+        this.times[slot] = nanos;
+        this.tail.setRelease(tail + 1); // publishes the slot to the consumer
+        return true;
+    }
+
+    /**
+     * Hands every event in the queue to a sink, oldest first, and removes them. Must only be called from the one
+     * consumer thread
+     * @param sink receives the events
+     * @return number of events drained
+     */
+    public int drain(Sink sink) {
+        long head = this.head.getPlain();
+        long tail = this.tail.getAcquire();
+        for (long i = head; i < tail; i++) {
+            int slot = (int) i & this.mask;
+            sink.accept(this.events[slot], this.times[slot]);
+        }
+        this.head.setRelease(tail); // hands the slots back to the producer
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return number of events dropped because the queue was full
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+}
@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This is the InputRecorder class. It writes everything needed to replay a match to a compact binary file: a header
+ * with the seed and field setup, followed by the ships' input bitmask (see GameState.getInputMask()) for every tick,
+ * one byte per tick for up to four ships and two bytes for more. The file is only ever appended to, and whole buffers
+ * are flushed as they fill, so if the game crashes the file still holds every tick up to the last flush.
+ *
+ * File layout (big endian):
+ * <pre>
+ *   int   MAGIC
+ *   int   VERSION
+ *   long  seed
+ *   int   width
+ *   int   height
+ *   int   number of asteroids
+ *   int   bytes per tick (inputBytes() of the number of ships)
+ *   int   number of ticks in the match
+ *   int   height of the long course, or 0 for a match in one window
+ *   int   number of ships
+ *   then one input per tick of that many bytes, until the end of the file
+ * </pre>
+ */
+public class InputRecorder implements AutoCloseable {
+
+    public static final int MAGIC = 0x53524950; // "SRIP", marks a Space Race input recording
+    public static final int VERSION = 1; // version of the file layout
+    public static final int HEADER_BYTES = 44; // size of the header before the first tick
+    public static final int INPUT_BYTES = 1; // bytes used to store each tick's input bitmask for up to four ships
+    public static final int MAX_INPUT_BYTES = 2; // bytes used to store each tick's input bitmask for the most ships
+
+    private static final int BUFFER_TICKS = 4096; // ticks held in memory before being written to the file
+
+    private final FileChannel channel; // file being appended to
+    private final ByteBuffer buffer; // ticks waiting to be written, reused after every flush
+    private final int inputBytes; // bytes used to store each tick's input bitmask
+    private long ticks; // number of ticks recorded so far
+
+    /**
+     * Constructor that creates (or replaces) a recording file and writes its header
+     * @param path file to record into
+     * @param state the match about to be recorded, before its first tick
+     * @throws IOException if the file can't be created or written
+     */
+    public InputRecorder(Path path, GameState state) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(HEADER_BYTES, BUFFER_TICKS * MAX_INPUT_BYTES))
+                .order(ByteOrder.BIG_ENDIAN);
+        this.inputBytes = inputBytes(state.getShipCount());
+        this.buffer.putInt(MAGIC);
+        this.buffer.putInt(VERSION);
+        this.buffer.putLong(state.getSeed());
+        this.buffer.putInt(state.getWidth());
+        this.buffer.putInt(state.getHeight());
+        this.buffer.putInt(state.getAsteroids().size());
+        this.buffer.putInt(this.inputBytes);
+        this.buffer.putInt(state.getMatchTicks());
+        this.buffer.putInt(state.getCourse() != null ? state.getHeight() : 0);
+        this.buffer.putInt(state.getShipCount());
+        this.flush();
+    }
+
+    /**
+     * Records the input for one tick. Should be called with state.getInputMask() just before each state.tick()
+     * @param mask the ships' input bitmask for the tick
+     * @throws IOException if the buffer fills and can't be written
+     */
+    public void record(int mask) throws IOException {
+        if (this.inputBytes == 1) {
+            this.buffer.put((byte) mask);
+        } else {
+            this.buffer.putShort((short) mask);
+        }
+        this.ticks++;
+        if (this.buffer.remaining() < this.inputBytes) {
+            this.flush();
+        }
+    }
+
+    /**
+     * @param ships number of ships in a match
+     * @return bytes used to store each tick's input bitmask for that many ships, two bits per ship
+     */
+    public static int inputBytes(int ships) {
+        return ships <= 4 ? INPUT_BYTES : MAX_INPUT_BYTES;
+    }
+
+    /**
+     * @return number of ticks recorded so far
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Writes any buffered ticks to the end of the file
+     * @throws IOException if the file can't be written
+     */
+    public void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Writes any buffered ticks and closes the file
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This is the InputReplay class. It reads a file written by InputRecorder back one tick at a time. The file is memory
+ * mapped a window at a time rather than read into the heap, so a recording of any length replays with the same small
+ * amount of memory and without a system call per tick; the operating system pages the file in as it is read.
+ */
+public class InputReplay implements AutoCloseable {
+
+    private static final long WINDOW_BYTES = 64L << 20; // size of each mapped piece of the file
+
+    private final FileChannel channel; // the recording being read
+    private final long size; // length of the file in bytes
+    private final long seed; // seed the recorded match was started with
+    private final int width; // width of the recorded playing field
+    private final int height; // height of the recorded playing field
+    private final int numAsteroids; // number of asteroids in the recorded match
+    private final int matchTicks; // length of the recorded match in ticks
+    private final int courseHeight; // height of the recorded long course, or 0 if the match was in one window
+    private final int ships; // number of ships in the recorded match
+    private final int inputBytes; // bytes used to store each tick's input bitmask
+    private MappedByteBuffer window; // currently mapped piece of the file
+    private long windowStart; // position in the file that the window starts at
+
+    /**
+     * Constructor that opens a recording and reads its header
+     * @param path recording to read
+     * @throws IOException if the file can't be read or isn't a recording this version understands
+     */
+    public InputReplay(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = this.channel.size();
+        if (this.size < InputRecorder.HEADER_BYTES) {
+            this.channel.close();
+            throw new IOException(path + " is too short to be a recording");
+        }
+        this.map(0);
+        int magic = this.window.getInt();
+        int version = this.window.getInt();
+        this.seed = this.window.getLong();
+        this.width = this.window.getInt();
+        this.height = this.window.getInt();
+        this.numAsteroids = this.window.getInt();
+        this.inputBytes = this.window.getInt();
+        this.matchTicks = this.window.getInt();
+        this.courseHeight = this.window.getInt();
+        this.ships = this.window.getInt();
+        if (magic != InputRecorder.MAGIC || version != InputRecorder.VERSION || this.ships < 1
+                || this.ships > GameState.MAX_SHIPS || this.inputBytes != InputRecorder.inputBytes(this.ships)) {
+            this.channel.close();
+            throw new IOException(path + " is not a version " + InputRecorder.VERSION + " recording");
+        }
+    }
+
+    /**
+     * @return a new GameState set up exactly as the recorded match was before its first tick
+     */
+    public GameState createState() {
+        MatchSettings settings = new MatchSettings();
+        settings.setWidth(this.width);
+        settings.setHeight(this.height);
+        settings.setAsteroids(this.numAsteroids);
+        settings.setMatchTicks(this.matchTicks);
+        settings.setCourseHeight(this.courseHeight);
+        settings.setShips(this.ships);
+        return new GameState(settings, this.seed);
+    }
+
+    /**
+     * @return whether there is another recorded tick to read
+     */
+    public boolean hasNext() {
+        return this.windowStart + this.window.position() + this.inputBytes <= this.size;
+    }
+
+    /**
+     * @return the input bitmask recorded for the next tick
+     * @throws IOException if the next part of the file can't be mapped
+     */
+    public int next() throws IOException {
+        if (this.window.remaining() < this.inputBytes) {
+            this.map(this.windowStart + this.window.position());
+        }
+        return this.inputBytes == 1 ? this.window.get() & 0xFF : this.window.getShort() & 0xFFFF;
+    }
+
+    /**
+     * @return number of ticks in the recording
+     */
+    public long getTicks() {
+        return (this.size - InputRecorder.HEADER_BYTES) / this.inputBytes;
+    }
+
+    /**
+     * @return seed the recorded match was started with
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Maps the piece of the file starting at a position
+     */
+    private void map(long start) throws IOException {
+        this.windowStart = start;
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, this.size - start));
+        this.window.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
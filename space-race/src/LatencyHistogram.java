@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+/**
+ * This is the LatencyHistogram class. It counts durations in nanoseconds into log-linear buckets: each power of two is
+ * split into SUB_BUCKETS equal buckets, so any recorded value is known to within about 12%, from a nanosecond up to
+ * several minutes, in a fixed array of counts. Recording a value is a few shifts and an increment, and never allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3; // log2 of the number of buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BITS; // buckets per power of two
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS; // enough buckets for any positive long
+
+    private final long[] counts = new long[BUCKETS]; // number of values recorded in each bucket
+    private long count; // number of values recorded
+    private long sum; // sum of every value recorded
+    private long max; // largest value recorded
+
+    /**
+     * @param nanos a duration to count, negative durations are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        this.counts[bucketOf(value)]++;
+        this.count++;
+        this.sum += value;
+        if (value > this.max) {
+            this.max = value;
+        }
+    }
+
+    /**
+     * @param percentile a percentile from 0 to 100
+     * @return the upper bound of the bucket holding that percentile of recorded values, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += this.counts[b];
+            if (seen >= rank) {
+                return Math.min(upperBound(b), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return mean of the recorded values, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * @return largest value recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Forgets every recorded value
+     */
+    public void reset() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.sum = 0;
+        this.max = 0;
+    }
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each; above that, the position of the highest set bit picks the power of
+     * two and the next SUB_BITS bits pick the bucket within it
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> magnitude) & (SUB_BUCKETS - 1);
+        return (magnitude + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value that falls into a bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << magnitude) - 1;
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * This is the MatchSettings class. It holds every number a match is set up from apart from its seed: the size of the
+ * field, how many asteroids are in it, how long the match lasts, whether it is a long course, how many ships race
+ * and how fast they move and how big their triangles are. A new MatchSettings is the game as it is usually played;
+ * the setters change one number at a time, so BalanceAnalyzer can try other values without the constants in Race and
+ * Ship being touched.
+ */
+public class MatchSettings {
+
+    private int width = 800; // width of the playing field
+    private int height = 600; // height of the playing field, when it isn't a long course
+    private int asteroids = 30; // number of asteroids, when the playing field isn't a long course
+    private int matchTicks = GameState.DEFAULT_MATCH_TICKS; // number of ticks the match lasts
+    private int courseHeight = 0; // height of the long course, or 0 to play in one window
+    private int ships = 2; // number of ships racing, spaced evenly across the field
+    private int shipSpeed = Ship.SPEED; // pixels the ships move each tick a key is held
+    private int shipSize = 100; // size of the ships' triangles as a percentage of the usual size
+
+    /**
+     * @return width of the playing field
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @param width width of the playing field
+     */
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    /**
+     * @return height of the playing field, when it isn't a long course
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @param height height of the playing field, when it isn't a long course
+     */
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    /**
+     * @return number of asteroids, when the playing field isn't a long course
+     */
+    public int getAsteroids() {
+        return asteroids;
+    }
+
+    /**
+     * @param asteroids number of asteroids, when the playing field isn't a long course
+     */
+    public void setAsteroids(int asteroids) {
+        this.asteroids = asteroids;
+    }
+
+    /**
+     * @return number of ticks the match lasts
+     */
+    public int getMatchTicks() {
+        return matchTicks;
+    }
+
+    /**
+     * @param matchTicks number of ticks the match lasts, kept between GameState.MIN_MATCH_TICKS and MAX_MATCH_TICKS
+     */
+    public void setMatchTicks(int matchTicks) {
+        this.matchTicks = Math.max(GameState.MIN_MATCH_TICKS, Math.min(GameState.MAX_MATCH_TICKS, matchTicks));
+    }
+
+    /**
+     * @return height of the long course, or 0 to play in one window
+     */
+    public int getCourseHeight() {
+        return courseHeight;
+    }
+
+    /**
+     * @param courseHeight height of the long course, or 0 to play in one window
+     */
+    public void setCourseHeight(int courseHeight) {
+        this.courseHeight = courseHeight;
+    }
+
+    /**
+     * @return number of ships racing
+     */
+    public int getShips() {
+        return ships;
+    }
+
+    /**
+     * @param ships number of ships racing, kept between 1 and GameState.MAX_SHIPS
+     */
+    public void setShips(int ships) {
+        this.ships = Math.max(1, Math.min(GameState.MAX_SHIPS, ships));
+    }
+
+    /**
+     * @return pixels the ships move each tick a key is held
+     */
+    public int getShipSpeed() {
+        return shipSpeed;
+    }
+
+    /**
+     * @param shipSpeed pixels the ships move each tick a key is held, at least 1
+     */
+    public void setShipSpeed(int shipSpeed) {
+        this.shipSpeed = Math.max(1, shipSpeed);
+    }
+
+    /**
+     * @return size of the ships' triangles as a percentage of the usual size
+     */
+    public int getShipSize() {
+        return shipSize;
+    }
+
+    /**
+     * @param shipSize size of the ships' triangles as a percentage of the usual size, see Ship.HALF_WIDTH
+     */
+    public void setShipSize(int shipSize) {
+        this.shipSize = Math.max(1, shipSize);
+    }
+
+}
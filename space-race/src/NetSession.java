@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This is the NetSession class. It lets two players on different machines play one match, each controlling one ship,
+ * using rollback: every tick is simulated straight away with the local player's real input and a guess at the remote
+ * player's input (whatever they were last known to be pressing), so the local ship responds with no delay. When the
+ * remote player's real input for a tick arrives and turns out to differ from the guess, the match is rewound to that
+ * tick with a SnapshotRing and every tick since is simulated again with the real input, all within one frame. Both
+ * players end up with exactly the same match, because GameState plays out identically for the same inputs.
+ *
+ * Inputs are sent over UDP with a non-blocking DatagramChannel. Every packet carries all of the local inputs the peer
+ * hasn't acknowledged yet, and acknowledges the peer's inputs in return, so a lost packet is covered by the next one
+ * and nothing is ever resent on a timer. If the peer falls more than MAX_ROLLBACK ticks behind, the session waits for
+ * it instead of guessing further ahead than the ring can rewind. Sending, receiving and rolling back reuse the same
+ * buffers and snapshots every tick and allocate nothing.
+ *
+ * Packet layout (big endian):
+ * <pre>
+ *   int   MAGIC
+ *   long  seed of the match, packets for any other match are ignored
+ *   int   number of the receiver's ticks the sender has received so far
+ *   int   tick of the first input in the packet
+ *   byte  number of inputs in the packet
+ *   then one byte per input, the sender's ship's two movement bits (bit 0 up, bit 1 down)
+ * </pre>
+ */
+public class NetSession implements AutoCloseable {
+
+    public static final int MAGIC = 0x53524E50; // "SRNP", marks a Space Race netplay packet
+    public static final int MAX_ROLLBACK = 12; // most ticks simulated ahead of the peer's last known input
+    private static final int HISTORY = 64; // ticks of inputs kept for each player, enough for any unacknowledged range
+    private static final int HEADER_BYTES = 21; // size of a packet before its inputs
+    private static final int MAX_INPUTS = 255; // most inputs that fit in one packet
+
+    private final GameState state; // the match being played
+    private final int side; // index of the local player's ship, 0 for left and 1 for right
+    private final DatagramChannel channel; // socket connected to the peer
+    private final SnapshotRing ring; // the state before each of the last MAX_ROLLBACK ticks
+    private final int[] localInputs = new int[HISTORY]; // local player's input for each tick, by tick % HISTORY
+    private final int[] remoteInputs = new int[HISTORY]; // remote player's real input for each tick received
+    private final int[] usedRemote = new int[HISTORY]; // remote input each tick was last simulated with
+    private final ByteBuffer sendBuffer; // packet being sent, reused for every packet
+    private final ByteBuffer receiveBuffer; // packet being read, reused for every packet
+    private long remoteReceived; // number of the remote player's ticks received, all inputs before this are known
+    private long peerReceived; // number of the local player's ticks the peer has acknowledged
+    private long rollbackTo = Long.MAX_VALUE; // earliest tick simulated with a wrong guess, or Long.MAX_VALUE
+    private long rollbacks; // number of times the match has been rewound
+    private long resimulatedTicks; // number of ticks simulated again after rewinding
+
+    /**
+     * Constructor for a session playing a match over a channel that is already connected to the peer
+     * @param state the match to play, before its first tick, set up the same way as the peer's
+     * @param side index of the local player's ship, 0 for left and 1 for right
+     * @param channel non-blocking channel connected to the peer
+     */
+    public NetSession(GameState state, int side, DatagramChannel channel) {
+        this.state = state;
+        this.side = side;
+        this.channel = channel;
+        this.ring = new SnapshotRing(state, MAX_ROLLBACK);
+        this.sendBuffer = ByteBuffer.allocateDirect(HEADER_BYTES + MAX_INPUTS).order(ByteOrder.BIG_ENDIAN);
+        this.receiveBuffer = ByteBuffer.allocateDirect(HEADER_BYTES + MAX_INPUTS).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Opens a non-blocking UDP channel on a local port, connects it to the peer and starts a session over it. Both
+     * players can run on one machine by giving each the other's port on 127.0.0.1
+     * @param state the match to play, before its first tick
+     * @param side index of the local player's ship, 0 for left and 1 for right
+     * @param localPort UDP port to receive the peer's packets on
+     * @param peer address the peer receives packets on
+     * @return the new session
+     * @throws IOException if the port can't be bound
+     */
+    public static NetSession open(GameState state, int side, int localPort, SocketAddress peer) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(localPort));
+            channel.connect(peer);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new NetSession(state, side, channel);
+    }
+
+    /**
+     * Runs the next tick with the local player's input, unless the match is over or the peer is too far behind, in
+     * which case only the network is serviced. Any late inputs that have arrived are rolled back first
+     * @param localInput the local player's movement bits for the tick, bit 0 for up and bit 1 for down
+     * @return whether a tick was run
+     * @throws IOException if the channel fails
+     */
+    public boolean advance(int localInput) throws IOException {
+        this.poll();
+        long tick = this.state.getTickCount();
+        if (this.state.isOver() || tick - this.remoteReceived >= MAX_ROLLBACK) {
+            this.send();
+            return false;
+        }
+        this.localInputs[(int) (tick % HISTORY)] = localInput & 3;
+        this.simulate(tick);
+        this.send();
+        return true;
+    }
+
+    /**
+     * Reads every packet that has arrived and, if any of them shows a tick was simulated with the wrong input, rewinds
+     * the match to that tick and simulates it and every tick after it again
+     * @throws IOException if the channel fails
+     */
+    public void poll() throws IOException {
+        this.receive();
+        if (this.rollbackTo == Long.MAX_VALUE) {
+            return;
+        }
+        long end = this.state.getTickCount();
+        this.ring.restore(this.state, this.rollbackTo);
+        for (long t = this.rollbackTo; t < end; t++) {
+            this.simulate(t);
+        }
+        this.rollbacks++;
+        this.resimulatedTicks += end - this.rollbackTo;
+        this.rollbackTo = Long.MAX_VALUE;
+    }
+
+    /**
+     * Keeps sending until the peer has acknowledged every local input or the time runs out, so the peer can finish its
+     * match with the real inputs even if earlier packets were lost
+     * @param timeoutNanos longest time to wait
+     * @throws IOException if the channel fails
+     */
+    public void finish(long timeoutNanos) throws IOException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (this.peerReceived < this.state.getTickCount() && System.nanoTime() < deadline) {
+            this.send();
+            this.receive();
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /**
+     * @return whether every tick so far was simulated with the remote player's real input, so the state can't change
+     */
+    public boolean isSettled() {
+        return this.remoteReceived >= this.state.getTickCount() && this.rollbackTo == Long.MAX_VALUE;
+    }
+
+    /**
+     * @return index of the local player's ship, 0 for left and 1 for right
+     */
+    public int getSide() {
+        return side;
+    }
+
+    /**
+     * @return number of times the match has been rewound
+     */
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * @return number of ticks simulated again after rewinding
+     */
+    public long getResimulatedTicks() {
+        return resimulatedTicks;
+    }
+
+    /**
+     * Closes the channel
+     * @throws IOException if the channel can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Saves the state before a tick into the ring, then runs the tick with the local input and the remote input, real
+     * if it has arrived and guessed if not
+     * @param tick the tick to run, which must be the state's current tick
+     */
+    private void simulate(long tick) {
+        int slot = (int) (tick % HISTORY);
+        int remote;
+        if (tick < this.remoteReceived) {
+            remote = this.remoteInputs[slot];
+        } else {
+            remote = this.remoteReceived == 0 ? 0 : this.remoteInputs[(int) ((this.remoteReceived - 1) % HISTORY)];
+        }
+        this.usedRemote[slot] = remote;
+        this.ring.save(this.state);
+        this.state.setInputMask(this.localInputs[slot] << (2 * this.side) | remote << (2 * (1 - this.side)));
+        this.state.tick();
+    }
+
+    /**
+     * Sends every local input the peer hasn't acknowledged, along with how many of the peer's inputs have arrived
+     */
+    private void send() throws IOException {
+        long tick = this.state.getTickCount();
+        long first = Math.max(this.peerReceived, tick - Math.min(HISTORY, MAX_INPUTS));
+        ByteBuffer buffer = this.sendBuffer;
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putLong(this.state.getSeed());
+        buffer.putInt((int) this.remoteReceived);
+        buffer.putInt((int) first);
+        buffer.put((byte) (tick - first));
+        for (long t = first; t < tick; t++) {
+            buffer.put((byte) this.localInputs[(int) (t % HISTORY)]);
+        }
+        buffer.flip();
+        try {
+            this.channel.write(buffer);
+        } catch (PortUnreachableException e) {
+            // the peer hasn't opened its port yet, the next packet will carry the same inputs
+        }
+    }
+
+    /**
+     * Reads every packet waiting on the channel, storing any new remote inputs in order and noting the earliest tick
+     * that was simulated with a guess that turned out wrong
+     */
+    private void receive() throws IOException {
+        ByteBuffer buffer = this.receiveBuffer;
+        while (true) {
+            buffer.clear();
+            int read;
+            try {
+                read = this.channel.read(buffer);
+            } catch (PortUnreachableException e) {
+                return; // a packet sent before the peer was listening bounced, there is nothing to read
+            }
+            if (read <= 0) {
+                return;
+            }
+            buffer.flip();
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC
+                    || buffer.getLong() != this.state.getSeed()) {
+                continue;
+            }
+            this.peerReceived = Math.max(this.peerReceived, buffer.getInt());
+            long first = buffer.getInt();
+            int count = Math.min(buffer.get() & 0xFF, buffer.remaining());
+            for (int k = 0; k < count; k++) {
+                long t = first + k;
+                int input = buffer.get() & 3;
+
+                // inputs already received are skipped, and a gap means packets arrived out of order; the missing
+                // inputs will come again in a later packet, so nothing after the gap is stored yet
+                if (t != this.remoteReceived) {
+                    if (t > this.remoteReceived) {
+                        break;
+                    }
+                    continue;
+                }
+                int slot = (int) (t % HISTORY);
+                this.remoteInputs[slot] = input;
+                this.remoteReceived++;
+                if (t < this.state.getTickCount() && input != this.usedRemote[slot]) {
+                    this.rollbackTo = Math.min(this.rollbackTo, t);
+                }
+            }
+        }
+    }
+
+}
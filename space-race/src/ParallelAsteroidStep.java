@@ -0,0 +1,110 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This is the ParallelAsteroidStep class. It does the same job as AsteroidField.step() for very large fields by
+ * splitting the field into fixed chunks and moving each chunk on a ForkJoinPool worker. Each worker moves its
+ * asteroids, wraps them and checks them against the ships' triangles, producing a bitmask of the ships its chunk hit;
+ * the masks are then OR-ed together. Asteroids never affect each other and the ships don't move during the step, so
+ * the positions and the hit mask are exactly the same as the single-threaded step, whatever order the chunks run in.
+ *
+ * The chunk tasks are created once and reused every tick, so stepping allocates nothing. Fields smaller than
+ * MIN_PARALLEL_ASTEROIDS are stepped on the calling thread, where handing work to other threads would cost more than it
+ * saves.
+ */
+public class ParallelAsteroidStep {
+
+    public static final int MIN_PARALLEL_ASTEROIDS = 1 << 16; // smallest field worth splitting across threads
+    private static final int MIN_CHUNK = 1 << 14; // fewest asteroids given to one task
+
+    private final ForkJoinPool pool; // threads the chunks run on
+    private final AsteroidField field; // asteroids being moved
+    private final Chunk[] chunks; // one reusable task per chunk of the field
+    private final StepAll root; // reusable task that runs every chunk and waits for them
+    private int[] triangles = new int[12]; // vertices of every ship's triangle, shared read-only by the chunks
+    private int shipCount; // number of triangles in use this tick
+
+    /**
+     * Constructor that splits a field into about four chunks per thread in the pool, so threads that finish early can
+     * steal work from slower ones
+     * @param field asteroids to move
+     * @param pool threads to move them on
+     */
+    public ParallelAsteroidStep(AsteroidField field, ForkJoinPool pool) {
+        this.field = field;
+        this.pool = pool;
+        int size = field.size();
+        int count = Math.max(1, Math.min(pool.getParallelism() * 4, size / MIN_CHUNK));
+        this.chunks = new Chunk[count];
+        for (int c = 0; c < count; c++) {
+            this.chunks[c] = new Chunk((int) ((long) size * c / count), (int) ((long) size * (c + 1) / count));
+        }
+        this.root = new StepAll();
+    }
+
+    /**
+     * Moves every asteroid one pixel and checks them against the ships, as AsteroidField.step() does
+     * @param ships ships to check for collision with the moved asteroids
+     * @return a bitmask with bit i set if ships[i] was hit by at least one asteroid
+     */
+    public int step(Ship[] ships) {
+        if (this.field.size() < MIN_PARALLEL_ASTEROIDS) {
+            return this.field.step(ships);
+        }
+        if (this.triangles.length < 6 * ships.length) {
+            this.triangles = new int[6 * ships.length];
+        }
+        for (int s = 0; s < ships.length; s++) {
+            ships[s].triangle(this.triangles, 6 * s);
+        }
+        this.shipCount = ships.length;
+        this.field.invalidateGrid();
+
+        this.root.reinitialize();
+        this.pool.invoke(this.root);
+        int hits = 0;
+        for (Chunk chunk : this.chunks) {
+            hits |= chunk.hits;
+        }
+        return hits;
+    }
+
+    /**
+     * Task that runs every chunk and waits for all of them to finish
+     */
+    @SuppressWarnings("serial")
+    private class StepAll extends RecursiveAction {
+
+        @Override
+        protected void compute() {
+            for (Chunk chunk : chunks) {
+                chunk.reinitialize();
+            }
+            invokeAll(chunks);
+        }
+
+    }
+
+    /**
+     * Task that moves one chunk of the field and records which ships it hit
+     */
+    @SuppressWarnings("serial")
+    private class Chunk extends RecursiveAction {
+
+        private final int from; // index of the first asteroid in the chunk
+        private final int to; // index after the last asteroid in the chunk
+        private int hits; // ships hit by this chunk on its last run, as a bitmask
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            this.hits = field.moveRange(this.from, this.to, triangles, shipCount);
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+import fr.delthas.javamp3.Sound;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the PcmSound class. It holds a whole sound decoded into memory as mono samples at AudioEngine.SAMPLE_RATE,
+ * between -1 and 1, so playing it is only reading an array. Sounds are decoded once, when they are loaded: AIFF and WAV
+ * files with Java Sound, and MP3 files with javamp3, then mixed down to one channel, resampled to the engine's rate
+ * and scaled so their loudest sample is at full volume, leaving AudioEngine to set how loud each one is played.
+ */
+public class PcmSound {
+
+    private final float[] samples; // the decoded sound, one sample per frame at AudioEngine.SAMPLE_RATE
+
+    /**
+     * Constructor for a sound that has already been decoded
+     * @param samples mono samples at AudioEngine.SAMPLE_RATE, between -1 and 1
+     */
+    public PcmSound(float[] samples) {
+        this.samples = samples;
+    }
+
+    /**
+     * Decodes the contents of a sound file
+     * @param data contents of an AIFF, WAV or MP3 file
+     * @return the decoded sound
+     * @throws IOException if the file is in a format that can't be decoded
+     */
+    public static PcmSound decode(byte[] data) throws IOException {
+        byte[] pcm;
+        AudioFormat format;
+        if (isMp3(data)) {
+            try (Sound sound = new Sound(new ByteArrayInputStream(data))) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                sound.decodeFullyInto(out);
+                pcm = out.toByteArray();
+                format = sound.getAudioFormat();
+            }
+        } else {
+            try (AudioInputStream in = AudioSystem.getAudioInputStream(new ByteArrayInputStream(data))) {
+                AudioFormat source = in.getFormat();
+                format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, source.getSampleRate(), 16,
+                        source.getChannels(), 2 * source.getChannels(), source.getSampleRate(), false);
+                try (AudioInputStream converted = AudioSystem.getAudioInputStream(format, in)) {
+                    pcm = converted.readAllBytes();
+                }
+            } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+                throw new IOException("Unsupported sound file", e);
+            }
+        }
+        return new PcmSound(normalize(resample(toMono(pcm, format), format.getSampleRate())));
+    }
+
+    /**
+     * @return number of samples in the sound
+     */
+    public int length() {
+        return samples.length;
+    }
+
+    /**
+     * @param i index of a sample
+     * @return the sample, between -1 and 1
+     */
+    public float get(int i) {
+        return samples[i];
+    }
+
+    /**
+     * @return whether the data starts with an ID3 tag or an MPEG audio frame
+     */
+    private static boolean isMp3(byte[] data) {
+        if (data.length >= 3 && data[0] == 'I' && data[1] == 'D' && data[2] == '3') {
+            return true;
+        }
+        return data.length >= 2 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xE0) == 0xE0;
+    }
+
+    /**
+     * Averages the channels of 16 bit signed PCM into one
+     */
+    private static float[] toMono(byte[] pcm, AudioFormat format) {
+        int channels = format.getChannels();
+        boolean bigEndian = format.isBigEndian();
+        int frames = pcm.length / (2 * channels);
+        float[] mono = new float[frames];
+        for (int f = 0; f < frames; f++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                int at = (f * channels + c) * 2;
+                int hi = bigEndian ? pcm[at] : pcm[at + 1];
+                int lo = (bigEndian ? pcm[at + 1] : pcm[at]) & 0xFF;
+                sum += hi << 8 | lo;
+            }
+            mono[f] = sum / (32768f * channels);
+        }
+        return mono;
+    }
+
+    /**
+     * Scales a sound so its loudest sample is at -1 or 1, in place
+     */
+    private static float[] normalize(float[] samples) {
+        float peak = 0;
+        for (float sample : samples) {
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        if (peak > 0) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] /= peak;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Resamples a sound to AudioEngine.SAMPLE_RATE by linear interpolation
+     */
+    private static float[] resample(float[] samples, float rate) {
+        if (rate == AudioEngine.SAMPLE_RATE || samples.length == 0) {
+            return samples;
+        }
+        double step = rate / AudioEngine.SAMPLE_RATE;
+        float[] resampled = new float[(int) ((samples.length - 1) / step) + 1];
+        for (int i = 0; i < resampled.length; i++) {
+            double at = i * step;
+            int before = (int) at;
+            int after = Math.min(before + 1, samples.length - 1);
+            float t = (float) (at - before);
+            resampled[i] = samples[before] + (samples[after] - samples[before]) * t;
+        }
+        return resampled;
+    }
+
+}
@@ -1,152 +1,687 @@
 import processing.core.PApplet;
 import processing.core.PFont;
+import processing.core.PImage;
+import processing.awt.PGraphicsJava2D;
+import processing.event.Event;
+import processing.event.KeyEvent;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This is a recreation of the 1973 game Space Race, by Atari. The goal of the game is to navigate a spaceship
- * through a field of moving asteroids to the top of the screen. There are two ships, the left being controlled by the 
- * "W" and "S" keys and the right being controlled by the up and down arrows. Reaching the top of the screen scores a point and
- * respawns the ship at the bottom; hitting an asteroid respawns the ship at the bottom. The time left in the game is indicated by
- * the green bar. When the bar dissapears, the game ends, a short message is displayed and then the program quits. 
+ * through a field of moving asteroids to the top of the screen. There are two ships, the left being controlled by the
+ * "W" and "S" keys and the right being controlled by the up and down arrows. Reaching the top of the screen scores a
+ * point and respawns the ship at the bottom; hitting an asteroid respawns the ship at the bottom. The time left in the
+ * game is indicated by the green bar. When the bar dissapears, the game ends and a short message is displayed.
+ * Pressing "R" then starts a rematch straight away, otherwise the program quits after five seconds.
+ * 
+ * All of the game rules live in GameState; this class only forwards key presses to it, steps it and draws it. Movement
+ * keys are put on an InputQueue by the AWT thread as they arrive, and drained at the start of every tick, so no press
+ * is lost even if it is released again before the tick, and the time from each key press to the end of the frame that
+ * shows it is kept by the profiler. The match is stepped at a fixed GameState.TICKS_PER_SECOND by a FixedStepLoop, so
+ * the game runs at the same speed however long frames take to draw, and objects are drawn between their last two
+ * positions so movement stays smooth. Images and fonts come from the shared Assets cache, loaded in the background
+ * while a blank window is shown, and draw() never blocks: it moves between the LOADING, PLAYING and GAME_OVER screens.
+ * The time from launch (and from asking for a rematch) to the first frame of a match is printed in milliseconds.
+ * 
+ * The match: "--seed N" fixes the random field, "--asteroids N" changes the number of asteroids and
+ * "--match-seconds N" the length of a match from 45 to 180 seconds. "--ships N" races up to eight ships, spaced evenly
+ * across the field and flown with the keys in KEY_BINDINGS from left to right. "--course N" plays on a long course N
+ * windows tall instead, with each ship's column of the window scrolling to follow it.
+ * 
+ * Running: "--headless" plays a match without opening a window, "--threads N" moves the asteroids on N threads, for
+ * huge fields, and "--mute" silences the AudioEngine that plays hits, points and the end of the match.
+ * 
+ * Recording: "--record FILE" saves every tick's input to a file with InputRecorder, and "--replay FILE" plays such a
+ * file back instead of reading the keyboard (as fast as possible when combined with "--headless"). "--capture PATH"
+ * saves every frame of the match with a FrameCapture, as PNG files in the folder PATH or as one video if PATH ends in
+ * ".y4m". With "--headless" it draws one frame per tick offscreen instead, as fast as it can, which exports a
+ * "--replay FILE" recording faster than it was played.
+ * 
+ * Profiling: every frame is timed by a FrameProfiler. F3 shows its overlay, and "--profile FILE" writes its
+ * histograms as CSV when the game ends.
+ * 
+ * Network: "--peer HOST:PORT" plays against another machine with a NetSession, listening on "--listen PORT" and
+ * controlling the ship given by "--side left" or "--side right" with any set of keys. Both players must use the same
+ * seed (0 unless "--seed" is given), number of asteroids and course, and there are always two ships.
+ * 
+ * Bots: "--bot left", "--bot right", "--bot both" or a list of players such as "--bot 2,3" hands ships to a ShipBot,
+ * for playing alone or, with "--headless", for soaking the game in huge fields without anyone at the keys.
+ * 
+ * Scores: "--scores FILE" saves every match played in the window to a ScoreStore, and shows the high score on the end
+ * screen.
  * 
  * @author Milind Singh
  * @version 1.0
  */
 public class Race extends PApplet {
 
-    private Ship leftShip; // left-side Ship object
-    private Ship rightShip; // right-side Ship object
-    private ArrayList<Asteroid> asteroids; // ArrayList of asteroids to create
-    private Timer timer; // Timer object to display to screen
+    private GameState state; // the simulated match being drawn
+    private FixedStepLoop loop; // decides how many ticks to run before each frame
+    private InputRecorder recorder; // saves each tick's input when recording, otherwise null
+    private InputReplay replay; // supplies each tick's input when replaying, otherwise null
+    private NetSession net; // plays the match against a remote player, otherwise null
+    private ShipBot[] bots = new ShipBot[0]; // computer players flying ships in the current match
+    private FrameCapture capture; // saves every frame drawn when "--capture" is given, otherwise null
+    private ScoreStore scoreStore; // history and high scores of every match played here when "--scores" is given
+    private final InputQueue inputQueue = new InputQueue(INPUT_QUEUE_SIZE); // movement keys from the AWT thread
+    private final InputQueue.Sink inputSink = this::applyInput; // applies each key drained from the queue
+    private int heldInput; // movement keys held, laid out like GameState.getInputMask() with KEY_BINDINGS[s] as ship s
+    private int tappedInput; // movement keys pressed since the last tick, even if they have been released since
+    private final long[] inputTimes = new long[INPUT_QUEUE_SIZE]; // when each key drained since the last frame arrived
+    private int inputTimesCount; // number of times in inputTimes
+    private Ship[] ships; // every ship in the match, from left to right
+    private long[] viewTops; // y position of the course shown at the top of each ship's column, reused every frame
+    private PImage shipImg; // reference to image of a ship
     private PFont scoreText; // text object for player scores
+    private Hud hud; // cached layer with the scores and timer bar
     private PFont endText; // text object for end of game message
-    private boolean gameOver = false; // check to run Thread.sleep()
-    private final int WINDOW_WIDTH = 800; // width of display window
-    private final int WINDOW_HEIGHT = 600; // height display window
-    private final int NUM_ASTEROIDS = 30; // number of asteroid obstacles to create on screen
+    private PFont profileText; // text object for the profiler overlay
+    private FrameProfiler profiler; // times each phase of every frame
+    private AudioEngine audio; // plays the sound effects, created once the sounds have been decoded
+    private int heardScores; // every ship's score added up when sounds were last played for them
+    private int heardHits; // every ship's hits added up when sounds were last played for them
+    private ForkJoinPool pool; // threads the asteroids are moved on, or null for the animation thread
+    private boolean showProfile = false; // whether the profiler overlay is drawn
+    private Screen screen = Screen.LOADING; // what draw() is currently showing
+    private int endedAt; // millis() when the last match ended
+    private long firstFrameFrom = LAUNCHED; // System.nanoTime() the next first frame is timed from, or 0 once drawn
+    private static final long LAUNCHED = System.nanoTime(); // time the game was started, roughly
+    private static final int END_SCREEN_MILLIS = 5 * 1000; // how long the end message is shown before quitting
+    private static final int REMATCH_KEY = 82; // keyCode 82 is for the "R" key, which starts a rematch
+    private static final int WINDOW_WIDTH = 800; // width of display window
+    private static final int WINDOW_HEIGHT = 600; // height display window
+    private static final int NUM_ASTEROIDS = 30; // number of asteroid obstacles to create on screen
+    private static final int MAX_TICKS_PER_FRAME = 5; // most ticks to catch up on before a frame is drawn
+    private static final int PROFILE_KEY = 114; // keyCode 114 is for the F3 key, which shows the profiler overlay
+    private static final int INPUT_QUEUE_SIZE = 256; // most key events that can wait for the next tick
+    private static final int[][] KEY_BINDINGS = { // keyCodes of the up and down keys of each ship, from left to right
+        { 87, 83 }, // "W" and "S"
+        { UP, DOWN }, // the up and down arrows
+        { 73, 75 }, // "I" and "K"
+        { 84, 71 }, // "T" and "G"
+        { 104, 101 }, // 8 and 5 on the number pad
+        { 81, 65 }, // "Q" and "A"
+        { 80, 59 }, // "P" and ";"
+        { 89, 72 } // "Y" and "H"
+    };
 
     /**
-	 * Initializes the two ships, the asteroid field, the score and end texts, and the game timer
+     * The screens draw() moves between
+     */
+    private enum Screen {
+        LOADING, // waiting for the assets, nothing is drawn
+        PLAYING, // a match is being played
+        GAME_OVER // the end message is shown until a rematch starts or the program quits
+    }
+
+    /**
+	 * Initializes the match state and starts loading the ship image, and the score and end texts in the background
 	 */
     public void setup() {
+        Assets.preload(this); // starts loading the ship image and fonts so draw() doesn't have to wait for them
+        String replayFile = optionValue(this.args, "--replay");
+        String recordFile = optionValue(this.args, "--record");
+        try {
+            if (replayFile != null) {
+                replay = new InputReplay(Paths.get(replayFile));
+                state = replay.createState(); // sets up the ships, asteroid field and timer as they were recorded
+            } else {
+                state = stateFrom(this.args, this.width, this.height); // sets up the ships, asteroid field and timer
+                net = netFrom(this.args, state);
+                if (recordFile != null && net == null) {
+                    recorder = new InputRecorder(Paths.get(recordFile), state);
+                }
+            }
+            String captureFile = optionValue(this.args, "--capture");
+            if (captureFile != null) {
+                capture = new FrameCapture(Paths.get(captureFile), this.width, this.height,
+                        FrameCapture.DEFAULT_BUFFERS);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String scoresFile = optionValue(this.args, "--scores");
+        if (scoresFile != null && replay == null) {
+            try {
+                scoreStore = new ScoreStore(Paths.get(scoresFile));
+                if (scoreStore.wasTornRecordCleared()) {
+                    System.out.println("Cleared a partly written record at the end of " + scoresFile);
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // the game is still playable without its high scores
+            }
+        }
+        pool = poolFrom(this.args);
+        profiler = new FrameProfiler(true);
+        screen = Screen.LOADING;
+        startMatch(state);
+    }
+
+    /**
+     * Starts a new match against the same field settings as the last one, reusing every asset and the Hud, so the
+     * first frame of the new match can be drawn on the very next frame. A fixed "--seed" gives the same field again
+     */
+    public void rematch() {
+        firstFrameFrom = System.nanoTime();
+        startMatch(stateFrom(this.args, this.width, this.height));
+    }
 
-        // sets up left ship at 1/4 of the way across the window, 45 pixels above the bottom
-        leftShip = new Ship(this, this.width / 4, this.height - 45);
+    /**
+     * Makes a state the match being played and drawn
+     * @param state the new match, before its first tick
+     */
+    private void startMatch(GameState state) {
+        this.state = state;
+        state.setPool(pool);
+        state.setProfiler(profiler);
+        loop = new FixedStepLoop(GameState.TICKS_PER_SECOND, MAX_TICKS_PER_FRAME);
+        ships = state.getShips();
+        viewTops = new long[ships.length];
+        heardScores = 0;
+        heardHits = 0;
+        bots = replay == null && net == null ? botsFrom(this.args, state) : new ShipBot[0];
+        if (screen != Screen.LOADING) {
+            screen = Screen.PLAYING;
+        }
+    }
 
-        // sets up the right ship 3/4 of the way across the window, 45 pixels above the bottom
-        rightShip = new Ship(this, this.width * 3 / 4, this.height - 45);
-        
-        // creates the Asteroid objects
-        asteroids = new ArrayList<Asteroid>();
-        for (int i = 0; i < NUM_ASTEROIDS; i++) {
-            Asteroid asteroid = new Asteroid(this);
-            this.asteroids.add(asteroid);
+    /**
+     * Takes the ship image and fonts from the cache and sets up the Hud, waiting for them only if they haven't finished
+     * loading
+     */
+    private void takeAssets() {
+        shipImg = Assets.image(this, Assets.SHIP_IMAGE); // the ship image is loaded once for both ships
+        scoreText = Assets.font(this, Assets.TEXT_FONT, Assets.SCORE_SIZE); // font and size of score text to display
+        hud = new Hud(this, scoreText); // sets up the layer the scores and timer bar are drawn on
+        endText = Assets.font(this, Assets.TEXT_FONT, Assets.END_SIZE); // font and size of end game message
+        profileText = Assets.font(this, Assets.PROFILE_FONT, Assets.PROFILE_SIZE); // font of the profiler overlay
+        if (hasFlag(this.args, "--mute")) {
+            audio = new AudioEngine(null, null);
+        } else {
+            audio = new AudioEngine(Assets.sound(this, Assets.THUMP_SOUND),
+                    Assets.sound(this, Assets.VIBRAPHONE_SOUND));
         }
-        scoreText = createFont("Arial", 40);  // sets font and size of score text to display
-        endText = createFont("Arial", 60); // sets font and size of end game message
-        timer = new Timer(this); // sets up the timer bar to display to the window
     }
 
     /**
-	 * draws the main game including the ships, asteroids, timer, and end message to the window
+	 * draws the main game including the ships, asteroids, timer, and end message to the window. Nothing here waits:
+     * while the assets are loading the window is left blank, and the end message is shown for a number of frames
+     * rather than by sleeping
 	 */
     public void draw() {
 
-        // determines whether game has completed and ending message has been printed so that program can pause for
-        // five seconds before quitting on its own. This has to be called away from other draw method components to avoid
-        // the game pausing and quitting unexpectedly
-        if (gameOver) { 
+        // shows a blank window until everything has loaded, then starts the match from that frame on
+        if (screen == Screen.LOADING) {
+            if (!Assets.isLoaded()) {
+                this.background(0, 0, 0);
+                return;
+            }
+            takeAssets();
+            loop = new FixedStepLoop(GameState.TICKS_PER_SECOND, MAX_TICKS_PER_FRAME);
+            screen = Screen.PLAYING;
+        }
+
+        // displays the end message until the player asks for a rematch or it has been shown long enough
+        if (screen == Screen.GAME_OVER) {
+            int remaining = END_SCREEN_MILLIS - (millis() - endedAt);
+            if (remaining <= 0) {
+                exit();
+                return;
+            }
+            drawEnd(remaining);
+            return;
+        }
+
+        // displays the game to the window as long as the timer hasn't run out
+        if (!isFinished()) {
+
+            // advances ships, asteroids, collisions, scores and the timer by however many ticks are due
+            profiler.beginFrame();
+            int ticks = loop.advance(System.nanoTime());
+            for (int i = 0; i < ticks && !isFinished(); i++) {
+                step();
+            }
+            drawGame(loop.alpha());
+            captureFrame();
+            playSounds();
+            profiler.mark(FrameProfiler.RENDER);
+            recordInputLatency();
+            if (showProfile) {
+                drawProfile();
+            }
+            profiler.endFrame();
+            if (firstFrameFrom != 0) {
+                println("First frame of the match drawn after " + (System.nanoTime() - firstFrameFrom) / 1000000
+                        + " ms");
+                firstFrameFrom = 0;
+            }
+
+        // switches to the end message, depending on player scores
+        } else {
+            screen = Screen.GAME_OVER;
+            endedAt = millis();
+            stopRecording();
+            stopCapture();
+            stopNet();
+            saveScores();
+            writeProfile(optionValue(this.args, "--profile"), profiler);
+            audio.play(AudioEngine.GAME_OVER);
+            drawEnd(END_SCREEN_MILLIS);
+        }
+    }
+
+    /**
+     * Draws the end of game message, and how to get a rematch if one can be played
+     * @param remaining milliseconds left before the program quits
+     */
+    private void drawEnd(int remaining) {
+        this.background(0, 0, 0); // clears existing background
+        textFont(endText);
+        fill(255);
+        textAlign(CENTER, CENTER);
+        text("GAME OVER", this.width / 2, (this.height / 2) - 30);
+        textSize(40);
+        int winner = 0; // index of the ship with the highest score
+        boolean tied = false; // whether another ship has the highest score too
+        for (int s = 1; s < this.ships.length; s++) {
+            if (this.ships[s].getScore() > this.ships[winner].getScore()) {
+                winner = s;
+                tied = false;
+            } else if (this.ships[s].getScore() == this.ships[winner].getScore()) {
+                tied = true;
+            }
+        }
+        if (!tied) {
+            text("Player " + (winner + 1) + " wins!", this.width / 2, (this.height / 2) + 30);
+        } else {
+            text("It's a tie!", this.width / 2, (this.height / 2) + 30);
+        }
+        textSize(20);
+        if (scoreStore != null && scoreStore.getTopCount() > 0) {
+            text("High score: " + scoreStore.getTopScore(0), this.width / 2, (this.height / 2) + 70);
+        }
+        if (canRematch()) {
+            text("Press R for a rematch (" + (remaining + 999) / 1000 + ")", this.width / 2, (this.height / 2) + 100);
+        }
+    }
+
+    /**
+     * @return whether a new match can be started here once this one is over, which isn't possible when replaying a
+     *         recording or playing over the network
+     */
+    private boolean canRematch() {
+        return replay == null && optionValue(this.args, "--peer") == null;
+    }
+
+    /**
+     * Draws the asteroids, ships, scores and timer bar as they are in the current state, without advancing it. The
+     * whole asteroid field is written straight into the frame's pixels by AsteroidRenderer, and the scores and timer
+     * bar come from the cached Hud layer, so the cost of a frame barely depends on the number of asteroids. On a long
+     * course the window is split into one column per ship, each scrolling to follow its own ship
+     * @param alpha how far the current time is between the last tick and the next one, used to draw moving objects
+     *              between their last two positions
+     */
+    public void drawGame(float alpha) {
+        if (hud == null) {
+            takeAssets();
+        }
+        loadPixels();
+
+        // setting black background, has to be redrawn everytime to not interfere with timer bar
+        Arrays.fill(this.pixels, 0xFF000000);
+        AsteroidRenderer.draw(this.pixels, this.width, this.height, state.getAsteroids(), alpha);
+        CourseField course = state.getCourse();
+        for (int s = 0; s < ships.length; s++) {
+            viewTops[s] = viewTop(ships[s], alpha);
+            if (course != null) {
+                AsteroidRenderer.draw(this.pixels, this.width, this.height, course, state.getTickCount(), alpha,
+                        this.width * s / ships.length, this.width * (s + 1) / ships.length, viewTops[s]);
+            }
+        }
+        updatePixels();
+        imageMode(CORNER);
+        image(hud.update(ships, state.getTimer()), 0, 0);
+        for (int s = 0; s < ships.length; s++) {
+            // drawn over the Hud, so a ship in the middle isn't hidden by the timer bar
+            drawShip(ships[s], alpha, viewTops[s]);
+        }
+    }
+
+    /**
+     * Hands the frame just drawn to the FrameCapture, if frames are being saved. Only the pixels are copied here; the
+     * capture's own threads encode and write them
+     */
+    private void captureFrame() {
+        if (capture != null) {
+            loadPixels();
+            capture.capture(this.pixels);
+        }
+    }
+
+    /**
+     * Waits for every captured frame to be written and closes the capture, if there is one
+     */
+    private void stopCapture() {
+        if (capture != null) {
             try {
-                Thread.sleep(5 * 1000);
-            } catch (InterruptedException e) {
+                capture.close();
+                println("Saved " + capture.getCaptured() + " frames to " + capture.getPath());
+            } catch (IOException e) {
                 e.printStackTrace();
-            } finally {
-                System.exit(0);
             }
+            capture = null;
         }
+    }
 
-        // displays the game to the window as long as the timer hasn't run out
-        if (!timer.isTimeUp()) {
-            this.background(0, 0, 0); // setting black background, has to be redrawn everytime to not interfere with timer bar
-            leftShip.draw();
-            rightShip.draw();
-            textFont(scoreText);
-            fill(255);
-            text(Integer.toString(this.leftShip.getScore()), 100, this.height - 45);
-            text(Integer.toString(this.rightShip.getScore()), 700, this.height - 45);
-            for (int i = 0; i < this.asteroids.size(); i++) {
-                Asteroid asteroid = this.asteroids.get(i);
-                asteroid.draw();
-
-                // storing x and y coordinates of asteroid as a single Point for collision check
-                Point astPos = new Point(asteroid.getX(), asteroid.getY());
-                
-                // checking every asteroid with each ship to see if they have collided, if so, reset ship to the bottom of screen
-                if (leftShip.collision(astPos)) {
-                    leftShip.respawn();
+    /**
+     * Saves the match that just ended to the score store, if there is one, and prints the high scores
+     */
+    private void saveScores() {
+        if (scoreStore != null) {
+            try {
+                scoreStore.append(state, System.currentTimeMillis());
+                StringBuilder table = new StringBuilder("High scores:");
+                for (int rank = 0; rank < scoreStore.getTopCount(); rank++) {
+                    table.append(' ').append(scoreStore.getTopScore(rank));
+                }
+                println(table);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Asks for a sound for every hit and every point scored since the last frame. Only a few ints are compared, and
+     * AudioEngine.play() never waits, so this costs the frame nothing
+     */
+    private void playSounds() {
+        int hits = 0;
+        int scores = 0;
+        for (Ship ship : ships) {
+            hits += ship.getHits();
+            scores += ship.getScore();
+        }
+        if (hits > heardHits) {
+            audio.play(AudioEngine.HIT);
+        }
+        heardHits = hits;
+        if (scores > heardScores) {
+            audio.play(AudioEngine.SCORE);
+        }
+        heardScores = scores;
+    }
+
+    /**
+     * Stops the sound effects when the sketch is shut down
+     */
+    @Override
+    public void dispose() {
+        if (audio != null) {
+            audio.close();
+        }
+        stopCapture();
+        if (scoreStore != null) {
+            try {
+                scoreStore.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            scoreStore = null;
+        }
+        super.dispose();
+    }
+
+    /**
+     * @return the match being drawn
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * @return whether the match is over, either because the timer ran out or because the replay being played has ended
+     */
+    private boolean isFinished() {
+        return (state.isOver() && (net == null || net.isSettled())) || (replay != null && !replay.hasNext());
+    }
+
+    /**
+     * Runs one tick of the match, first taking its input from the replay or saving it to the recording if there is one.
+     * Over the network the NetSession runs the tick instead, after rolling back any late inputs from the peer, and may
+     * hold the tick back if the peer has fallen too far behind
+     */
+    private void step() {
+        try {
+            if (replay != null) {
+                state.setInputMask(replay.next());
+            } else {
+                int mask = sampleInput();
+                if (net != null) {
+                    net.poll();
+                    profiler.mark(FrameProfiler.INPUT);
+                    net.advance(foldInput(mask)); // any set of keys moves the local player's ship
+                    return;
                 }
-                if (rightShip.collision(astPos)) {
-                    rightShip.respawn();
+                state.setInputMask(mask);
+                for (ShipBot bot : bots) {
+                    bot.control();
                 }
+                mask = state.getInputMask();
+                if (recorder != null) {
+                    recorder.record(mask);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            stopRecording();
+        }
+        profiler.mark(FrameProfiler.INPUT);
+        state.tick();
+    }
+
+    /**
+     * Drains the key events that have arrived since the last tick and works out the input for this tick: the keys
+     * being held, or for a ship with no key held, any key that was pressed and released again since the last tick, so
+     * the tap still moves it for a tick
+     * @return the ships' input for this tick, laid out like GameState.getInputMask()
+     */
+    private int sampleInput() {
+        tappedInput = 0;
+        inputQueue.drain(inputSink);
+        int mask = 0;
+        int count = net != null ? KEY_BINDINGS.length : ships.length; // over the network every set of keys is read
+        for (int s = 0; s < count; s++) {
+            int bits = (heldInput >> (2 * s)) & 3;
+            if (bits == 0) {
+                bits = (tappedInput >> (2 * s)) & 3;
             }
-            timer.draw();
+            mask |= bits << (2 * s);
+        }
+        return mask;
+    }
 
-        // displays game end message, depending on player scores
+    /**
+     * @param mask input of every set of keys, laid out like GameState.getInputMask()
+     * @return the two bits of one ship, up if any set of keys is moving up and down if any is moving down
+     */
+    private static int foldInput(int mask) {
+        int bits = 0;
+        for (int s = 0; s < KEY_BINDINGS.length; s++) {
+            bits |= (mask >> (2 * s)) & 3;
+        }
+        return bits;
+    }
+
+    /**
+     * Applies one key event from the queue. Pressing a direction lets go of the opposite one, as the keys always have
+     * @param event the key's bit in the input mask, shifted left by one, plus 1 if it was pressed or 0 if released
+     * @param nanos System.nanoTime() when the key event happened
+     */
+    private void applyInput(int event, long nanos) {
+        int key = event >> 1;
+        if ((event & 1) != 0) {
+            heldInput = (heldInput | 1 << key) & ~(1 << (key ^ 1));
+            tappedInput |= 1 << key;
         } else {
-            gameOver = true; // makes it so that the system can pause, then quit when draw() is called again after end message
-            this.background(0, 0, 0); // clears existing background
-            textFont(endText);
-            fill(255);
-            textAlign(CENTER, CENTER);
-            text("GAME OVER", this.width / 2, (this.height / 2) - 30);
-            textSize(40);
-            if (this.leftShip.getScore() > this.rightShip.getScore()) {
-                text("Player 1 wins!", this.width / 2, (this.height / 2) + 30);
-            } else if (this.rightShip.getScore() > this.leftShip.getScore()) {
-                text("Player 2 wins!", this.width / 2, (this.height / 2) + 30);
-            } else {
-                text("It's a tie!", this.width / 2, (this.height / 2) + 30);
+            heldInput &= ~(1 << key);
+        }
+        if (inputTimesCount < inputTimes.length) {
+            inputTimes[inputTimesCount++] = nanos;
+        }
+    }
+
+    /**
+     * Gives the profiler the time from each key drained since the last frame to the end of drawing this one
+     */
+    private void recordInputLatency() {
+        long now = System.nanoTime();
+        for (int i = 0; i < inputTimesCount; i++) {
+            profiler.recordInputLatency(now - inputTimes[i]);
+        }
+        inputTimesCount = 0;
+    }
+
+    /**
+     * Draws the profiler's fps and per-phase timings in the top left corner
+     */
+    private void drawProfile() {
+        fill(0, 0, 0, 180);
+        noStroke();
+        rect(5, 5, 250, 140);
+        textFont(profileText);
+        textAlign(LEFT, TOP);
+        fill(255);
+        text(profiler.getSummary(), 10, 10);
+    }
+
+    /**
+     * Writes a profiler's histograms to a CSV file, if one was asked for
+     * @param file path to write to, or null to write nothing
+     * @param profiler profiler to write out
+     */
+    private static void writeProfile(String file, FrameProfiler profiler) {
+        if (file != null) {
+            try {
+                profiler.writeCsv(Paths.get(file));
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
     }
 
     /**
-	 * Allows up and down movement for each ship by changing movement boolean values which affect draw() in the Ship class
-     * Left ship uses "W" and "S" keys while right ship uses Up and Down arrows
-	 */
-    public void keyPressed() {
-        if (this.keyCode == 87) { // keyCode 87 is for "W" key
-            this.leftShip.setUp(true);
-            this.leftShip.setDown(false);
-        } else if (this.keyCode == 83) { // keyCode 83 is for "S" key
-            this.leftShip.setUp(false);
-            this.leftShip.setDown(true);
+     * Writes out and closes the recording, if there is one
+     */
+    private void stopRecording() {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            recorder = null;
         }
+    }
 
-        if (this.keyCode == UP) {
-            this.rightShip.setUp(true);
-            this.rightShip.setDown(false);
-        } else if (this.keyCode == DOWN) {
-            this.rightShip.setUp(false);
-            this.rightShip.setDown(true);
+    /**
+     * Makes sure the peer has every local input, then closes the network session, if there is one
+     */
+    private void stopNet() {
+        if (net != null) {
+            try {
+                net.finish(1_000_000_000L);
+                net.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            net = null;
         }
     }
 
     /**
-	 * Stops ships from moving indefinitely after a key is pressed by changing boolean values used in Ship class
-	 */
-    public void keyReleased() {
-        if (this.keyCode == 87) {
-            this.leftShip.setUp(false);
-        } else if (this.keyCode == 83) {
-            this.leftShip.setDown(false);
+     * Draws a ship's image centered on its x coordinate and between its last two y coordinates
+     * @param ship the ship to draw
+     * @param alpha how far the current time is between the last tick and the next one
+     * @param top y position of the playing field shown at the top of the ship's column of the window
+     */
+    private void drawShip(Ship ship, float alpha, long top) {
+        imageMode(CENTER); // setting so the image is drawn centered on the specified x and y coordinates
+        image(this.shipImg, ship.getX(), lerp(ship.getLastY() - top, ship.getY() - top, alpha));
+    }
+
+    /**
+     * Works out which part of a long course a ship's column of the window shows, keeping the ship two thirds of the way
+     * down the window until it nears either end of the course
+     * @param ship the ship the view follows
+     * @param alpha how far the current time is between the last tick and the next one
+     * @return y position of the course shown at the top of the window, always 0 when the match isn't on a long course
+     */
+    private long viewTop(Ship ship, float alpha) {
+        if (state.getCourse() == null) {
+            return 0;
         }
+        long top = ship.getLastY() + Math.round((ship.getY() - ship.getLastY()) * alpha) - this.height * 2 / 3;
+        return Math.max(0, Math.min(state.getHeight() - this.height, top));
+    }
 
-        if (this.keyCode == UP) {
-            this.rightShip.setUp(false);
-        } else if (this.keyCode == DOWN) {
-            this.rightShip.setDown(false);
+    /**
+     * Receives every event from the window on the AWT thread. Presses and releases of the movement keys go straight on
+     * the InputQueue, to be drained by the next tick, timed from when the key actually changed. Each ship uses its
+     * pair of keys in KEY_BINDINGS, so the left ship uses "W" and "S" keys while the second uses Up and Down arrows;
+     * over the network every set of keys moves the local player's ship. Everything else is passed on to Processing,
+     * which hands it to keyPressed() on the animation thread
+     * @param event the event from the window
+     */
+    @Override
+    public void postEvent(Event event) {
+        if (event instanceof KeyEvent && this.replay == null
+                && (event.getAction() == KeyEvent.PRESS || event.getAction() == KeyEvent.RELEASE)) {
+            int key = movementKey(((KeyEvent) event).getKeyCode());
+            if (key != -1) {
+                long now = System.nanoTime();
+                long age = Math.max(0, System.currentTimeMillis() - event.getMillis()) * 1000000L;
+                this.inputQueue.offer(key << 1 | (event.getAction() == KeyEvent.PRESS ? 1 : 0), now - age);
+                return;
+            }
+        }
+        super.postEvent(event);
+    }
+
+    /**
+     * @param keyCode code of a key
+     * @return the bit the key sets in the input mask, as in GameState.getInputMask(), or -1 if it isn't a movement key
+     */
+    private static int movementKey(int keyCode) {
+        for (int s = 0; s < KEY_BINDINGS.length; s++) {
+            if (keyCode == KEY_BINDINGS[s][0]) {
+                return 2 * s;
+            } else if (keyCode == KEY_BINDINGS[s][1]) {
+                return 2 * s + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+	 * Handles the keys that aren't movement keys: F3 shows or hides the profiler and "R" starts a rematch once the game
+     * is over
+	 */
+    public void keyPressed() {
+        if (this.keyCode == PROFILE_KEY) {
+            this.showProfile = !this.showProfile;
+        }
+        if (this.screen == Screen.GAME_OVER) {
+            if (this.keyCode == REMATCH_KEY && canRematch()) {
+                rematch();
+            }
         }
     }
 
@@ -157,8 +692,359 @@ public class Race extends PApplet {
         this.size(WINDOW_WIDTH, WINDOW_HEIGHT);
     }
 
+    /**
+     * Plays a match without a window as fast as it can be simulated and prints the result. With "--replay FILE" the
+     * recorded input is played back, otherwise the ships get no input unless "--bot" is given (and "--record FILE"
+     * saves that). When bots are playing, the longest any of them took to decide a tick is printed as well
+     * @param args command line arguments
+     * @throws IOException if the recording can't be read or written
+     */
+    private static void runHeadless(String[] args) throws IOException {
+        String replayFile = optionValue(args, "--replay");
+        String recordFile = optionValue(args, "--record");
+        InputReplay replay = null;
+        InputRecorder recorder = null;
+        GameState state;
+        if (replayFile != null) {
+            replay = new InputReplay(Paths.get(replayFile));
+            state = replay.createState();
+        } else {
+            state = stateFrom(args, WINDOW_WIDTH, WINDOW_HEIGHT);
+            if (recordFile != null) {
+                recorder = new InputRecorder(Paths.get(recordFile), state);
+            }
+        }
+
+        state.setPool(poolFrom(args));
+        String profileFile = optionValue(args, "--profile");
+        FrameProfiler profiler = new FrameProfiler(profileFile != null);
+        state.setProfiler(profiler);
+        ShipBot[] bots = replay == null ? botsFrom(args, state) : new ShipBot[0];
+
+        long start = System.nanoTime();
+        while (!state.isOver()) {
+            if (replay != null && !replay.hasNext()) {
+                break; // before the frame is begun, so the profiler never holds a frame that wasn't ended
+            }
+            profiler.beginFrame();
+            if (replay != null) {
+                state.setInputMask(replay.next());
+            } else {
+                for (ShipBot bot : bots) {
+                    bot.control();
+                }
+                if (recorder != null) {
+                    recorder.record(state.getInputMask());
+                }
+            }
+            profiler.mark(FrameProfiler.INPUT);
+            state.tick();
+            profiler.endFrame();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (replay != null) {
+            replay.close();
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+        writeProfile(profileFile, profiler);
+        System.out.println("Seed: " + state.getSeed());
+        System.out.println("Ticks: " + state.getTickCount() + " (" + Math.round(state.getTickCount() / seconds)
+                + " per second)");
+        System.out.println("Score: " + scoreLine(state));
+        if (bots.length > 0) {
+            long worst = 0;
+            for (ShipBot bot : bots) {
+                worst = Math.max(worst, bot.getWorstNanos());
+            }
+            System.out.println("Bot: worst tick " + worst / 1000 + " us");
+        }
+    }
+
+    /**
+     * Plays a match without a window, drawing every tick into an offscreen buffer and saving it with "--capture",
+     * as fast as frames can be drawn. Input comes from "--replay FILE" or "--bot" as in runHeadless(), and the match is
+     * played without sound
+     * @param args command line arguments
+     */
+    private static void runExport(String[] args) {
+        String[] muted = Arrays.copyOf(args, args.length + 1);
+        muted[args.length] = "--mute";
+        Race race = new Race();
+        race.sketchPath(); // resolves file paths against the working directory, as PApplet.main() would
+        PGraphicsJava2D graphics = new PGraphicsJava2D();
+        graphics.setParent(race);
+        graphics.setPrimary(false);
+        graphics.setSize(WINDOW_WIDTH, WINDOW_HEIGHT);
+        race.g = graphics;
+        race.width = WINDOW_WIDTH;
+        race.height = WINDOW_HEIGHT;
+        race.args = muted;
+        race.setup();
+
+        long start = System.nanoTime();
+        while (!race.isFinished()) {
+            race.step();
+            graphics.beginDraw();
+            race.drawGame(0);
+            race.captureFrame();
+            graphics.endDraw();
+        }
+        long frames = race.capture.getCaptured();
+        race.stopCapture();
+        race.stopRecording();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("Exported " + frames + " frames in " + Math.round(seconds) + " s ("
+                + Math.round(frames / seconds) + " per second, " + GameState.TICKS_PER_SECOND + " is real time)");
+        System.out.println("Score: " + scoreLine(race.state));
+        race.audio.close();
+    }
+
+    /**
+     * Plays a match against a remote player without a window, ticking as fast as the peer keeps up. The local ship's
+     * input comes from its half of the recording given with "--replay FILE", or it gets no input. Both players
+     * replaying the same recording over the network finish with the same result as replaying it alone
+     * @param args command line arguments
+     * @throws IOException if the recording can't be read or the network fails
+     */
+    private static void runHeadlessNet(String[] args) throws IOException {
+        String replayFile = optionValue(args, "--replay");
+        InputReplay replay = replayFile != null ? new InputReplay(Paths.get(replayFile)) : null;
+        GameState state = replay != null ? replay.createState() : stateFrom(args, WINDOW_WIDTH, WINDOW_HEIGHT);
+        state.setPool(poolFrom(args));
+        NetSession net = netFrom(args, state);
+
+        long start = System.nanoTime();
+        int input = -1; // local input for the next tick, or -1 if it hasn't been read from the replay yet
+        while (!state.isOver() || !net.isSettled()) {
+            if (input == -1) {
+                input = replay != null && replay.hasNext() ? (replay.next() >> (2 * net.getSide())) & 3 : 0;
+            }
+            if (net.advance(input)) {
+                input = -1;
+            } else {
+                LockSupport.parkNanos(100_000); // waiting for the peer
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        net.finish(1_000_000_000L);
+        net.close();
+        if (replay != null) {
+            replay.close();
+        }
+        System.out.println("Seed: " + state.getSeed());
+        System.out.println("Ticks: " + state.getTickCount() + " (" + Math.round(state.getTickCount() / seconds)
+                + " per second)");
+        System.out.println("Rollbacks: " + net.getRollbacks() + " (" + net.getResimulatedTicks()
+                + " ticks simulated again)");
+        System.out.println("Score: " + scoreLine(state));
+    }
+
+    /**
+     * @param state a match
+     * @return every ship's score from left to right, such as "3 - 2"
+     */
+    private static String scoreLine(GameState state) {
+        StringBuilder line = new StringBuilder();
+        for (Ship ship : state.getShips()) {
+            if (line.length() > 0) {
+                line.append(" - ");
+            }
+            line.append(ship.getScore());
+        }
+        return line.toString();
+    }
+
+    /**
+     * Sets up a new match from the command line arguments
+     * @param args command line arguments
+     * @param width width of the window
+     * @param height height of the window
+     * @return the match, before its first tick
+     */
+    private static GameState stateFrom(String[] args, int width, int height) {
+        MatchSettings settings = new MatchSettings();
+        settings.setWidth(width);
+        settings.setHeight(height);
+        settings.setAsteroids(asteroidsFrom(args));
+        settings.setMatchTicks(matchTicksFrom(args));
+        settings.setCourseHeight(courseFrom(args, height));
+        settings.setShips(shipsFrom(args));
+        return new GameState(settings, seedFrom(args));
+    }
+
+    /**
+     * @param args command line arguments
+     * @return the number following "--ships" in the arguments (kept between 1 and GameState.MAX_SHIPS by
+     *         MatchSettings), or 2 if there isn't one or the match is played over the network
+     */
+    private static int shipsFrom(String[] args) {
+        String ships = optionValue(args, "--ships");
+        return ships != null && optionValue(args, "--peer") == null ? Integer.parseInt(ships) : 2;
+    }
+
+    /**
+     * @param args command line arguments
+     * @param height height of the window
+     * @return the number of windows following "--course" in the arguments as a height in pixels, or 0 if there isn't
+     *         one
+     */
+    private static int courseFrom(String[] args, int height) {
+        String windows = optionValue(args, "--course");
+        return windows != null ? (int) Math.min(Integer.MAX_VALUE / 2, Math.round(Double.parseDouble(windows) * height))
+                : 0;
+    }
+
+    /**
+     * @param args command line arguments
+     * @return the number following "--seed" in the arguments, or a seed based on the current time if there isn't one
+     *         (0 when playing over the network, so both players get the same field without agreeing on a seed)
+     */
+    private static long seedFrom(String[] args) {
+        String seed = optionValue(args, "--seed");
+        if (seed != null) {
+            return Long.parseLong(seed);
+        }
+        return optionValue(args, "--peer") != null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Opens a network session if "--peer HOST:PORT" was passed, receiving on the port following "--listen" (or the
+     * peer's port if there isn't one) and playing the ship following "--side" (left unless it is "right")
+     * @param args command line arguments
+     * @param state the match to play
+     * @return the session, or null if there is no peer
+     * @throws IOException if the port can't be bound
+     */
+    private static NetSession netFrom(String[] args, GameState state) throws IOException {
+        String peer = optionValue(args, "--peer");
+        if (peer == null) {
+            return null;
+        }
+        int colon = peer.lastIndexOf(':');
+        int peerPort = Integer.parseInt(peer.substring(colon + 1));
+        String listen = optionValue(args, "--listen");
+        int side = "right".equals(optionValue(args, "--side")) ? 1 : 0;
+        return NetSession.open(state, side, listen != null ? Integer.parseInt(listen) : peerPort,
+                new InetSocketAddress(peer.substring(0, colon), peerPort));
+    }
+
+    /**
+     * Creates the bots asked for with "--bot left" (the left-most ship), "--bot right" (the right-most ship), "--bot
+     * both" (every ship) or a comma separated list of players numbered from 1 on the left, such as "--bot 1,3". Bots
+     * only play matches in one window, so none are created on a long course
+     * @param args command line arguments
+     * @param state the match the bots will play
+     * @return a bot for each ship asked for, empty if there are none
+     */
+    private static ShipBot[] botsFrom(String[] args, GameState state) {
+        String side = optionValue(args, "--bot");
+        if (side == null) {
+            return new ShipBot[0];
+        }
+        if (state.getCourse() != null) {
+            System.out.println("Bots can't play on a long course, playing without them");
+            return new ShipBot[0];
+        }
+        if (side.equals("left")) {
+            return new ShipBot[] { new ShipBot(state, state.getLeftShip()) };
+        } else if (side.equals("right")) {
+            return new ShipBot[] { new ShipBot(state, state.getRightShip()) };
+        } else if (side.equals("both")) {
+            ShipBot[] bots = new ShipBot[state.getShipCount()];
+            for (int s = 0; s < bots.length; s++) {
+                bots[s] = new ShipBot(state, state.getShip(s));
+            }
+            return bots;
+        }
+        String[] players = side.split(",");
+        ShipBot[] bots = new ShipBot[players.length];
+        for (int i = 0; i < players.length; i++) {
+            int s = Math.max(1, Math.min(state.getShipCount(), Integer.parseInt(players[i].trim()))) - 1;
+            bots[i] = new ShipBot(state, state.getShip(s));
+        }
+        return bots;
+    }
+
+    /**
+     * @param args command line arguments
+     * @return the number following "--asteroids" in the arguments, or NUM_ASTEROIDS if there isn't one
+     */
+    private static int asteroidsFrom(String[] args) {
+        String asteroids = optionValue(args, "--asteroids");
+        return asteroids != null ? Integer.parseInt(asteroids) : NUM_ASTEROIDS;
+    }
+
+    /**
+     * @param args command line arguments
+     * @return the number of seconds following "--match-seconds" in the arguments as a number of ticks (kept between 45
+     *         seconds and three minutes by GameState), or GameState.DEFAULT_MATCH_TICKS if there isn't one
+     */
+    private static int matchTicksFrom(String[] args) {
+        String seconds = optionValue(args, "--match-seconds");
+        return seconds != null ? (int) Math.round(Double.parseDouble(seconds) * GameState.TICKS_PER_SECOND)
+                : GameState.DEFAULT_MATCH_TICKS;
+    }
+
+    /**
+     * @param args command line arguments
+     * @return a pool with the number of threads following "--threads" in the arguments, or null if there isn't one
+     */
+    private static ForkJoinPool poolFrom(String[] args) {
+        String threads = optionValue(args, "--threads");
+        return threads != null ? new ForkJoinPool(Integer.parseInt(threads)) : null;
+    }
+
+    /**
+     * @param args command line arguments
+     * @param option an option that takes a value, such as "--seed"
+     * @return the argument following the option, or null if it wasn't passed
+     */
+    private static String optionValue(String[] args, String option) {
+        if (args != null) {
+            for (int i = 0; i < args.length - 1; i++) {
+                if (args[i].equals(option)) {
+                    return args[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param args command line arguments
+     * @param flag an argument to look for
+     * @return whether the flag was passed
+     */
+    private static boolean hasFlag(String[] args, String flag) {
+        if (args != null) {
+            for (String arg : args) {
+                if (arg.equals(flag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public static void main(String[] args) {
-        PApplet.main("Race");
+        if (hasFlag(args, "--headless")) {
+            try {
+                if (optionValue(args, "--peer") != null) {
+                    runHeadlessNet(args);
+                } else if (optionValue(args, "--capture") != null) {
+                    runExport(args);
+                } else {
+                    runHeadless(args);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        } else {
+            PApplet.main("Race", args);
+        }
     }
 
 }
@@ -0,0 +1,49 @@
+/**
+ * This is the Rng class. Every random number in the game comes from one of these instead of Math.random(), so that a
+ * match started with the same seed and played with the same inputs turns out exactly the same every time. It is a
+ * SplitMix64 generator: the whole state is a single long, which makes it cheap to save and restore.
+ */
+public class Rng {
+
+    private long state; // the generator's entire state, advanced by a fixed constant on every call
+
+    /**
+     * Constructor for a generator that will produce the same sequence for the same seed
+     * @param seed the seed to start from
+     */
+    public Rng(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * @return the next 64 random bits
+     */
+    public long nextLong() {
+        long z = (this.state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return a random double between 0 (inclusive) and 1 (exclusive), like Math.random()
+     */
+    public double nextDouble() {
+        return (this.nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return the generator's current state, which can be handed to setState() to replay the sequence from here
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * @param state a state previously returned by getState()
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+}
@@ -0,0 +1,17 @@
+/**
+ * This is the ScalarTriangleBatch class. It checks points against a triangle one at a time with
+ * Ship.pointInTriangle, and is used wherever the Vector API isn't available.
+ */
+public class ScalarTriangleBatch implements TriangleBatch {
+
+    @Override
+    public boolean anyInside(int[] xs, int[] ys, int count, int ax, int ay, int bx, int by, int cx, int cy) {
+        for (int i = 0; i < count; i++) {
+            if (Ship.pointInTriangle(xs[i], ys[i], ax, ay, bx, by, cx, cy)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,590 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * This is the ScoreStore class. It keeps the history of every match played on a machine, and its high scores, in a
+ * log file of fixed size records that is only ever appended to, through memory mapped regions of the file, so saving a
+ * match is writing RECORD_BYTES bytes into memory and flushing them.
+ *
+ * Every record ends with a CRC32 of the rest of it. The end of the log is the first record that doesn't match its CRC,
+ * which is either space the file was grown by (all zeros) or a record that was only partly written when the game was
+ * stopped. A torn record like that is cleared when the log is opened, and the next match is written over it;
+ * wasTornRecordCleared() tells the caller it happened.
+ *
+ * The TOP_SCORES best scores (one match gives a score for each ship) are kept in memory, and saved to a checkpoint
+ * file next to the log every CHECKPOINT_EVERY matches and when the store is closed, along with how many records they
+ * cover. Opening the store reads the checkpoint and only goes through the records written after it, so opening takes
+ * the same time however long the history is. If the checkpoint is missing, damaged or from another log, the whole log
+ * is read once instead. The checkpoint is written to a temporary file and moved into place, so it is never half
+ * written.
+ *
+ * The log is locked while it is open, so a second game started with the same file stops with an error instead of
+ * writing its matches over the first one's. Logs open in this program are also kept in a set and checked before the
+ * file is touched, as closing any channel on a locked file can release the lock held through another.
+ *
+ * When the log grows past its limit it is compacted on close: the most recent matches and every match holding a high
+ * score are copied forward over the matches being dropped, and the records after them are cleared. This is done in
+ * place through the mapped regions, as a file that is still mapped can't be replaced or truncated on every system
+ * (Windows refuses, and Java can't unmap a region before it is garbage collected), so the file keeps its size and
+ * later matches are written into the cleared space. If the game stops part way through, no match is lost, but some
+ * can be left in the history twice.
+ *
+ * Log layout (big endian):
+ * <pre>
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   RECORD_BYTES
+ *   int   unused
+ *   long  id of the log, new every time it is created or compacted
+ *   long  unused
+ *   then one record per match:
+ *   long  time the match ended, in milliseconds since 1970
+ *   long  seed
+ *   int   number of asteroids
+ *   int   number of ticks in the match
+ *   int   height of the long course, or 0 for a match in one window
+ *   int   number of ships
+ *   short each ship's score from left to right, GameState.MAX_SHIPS of them with 0 for ships not in the match
+ *   short each ship's hits in the same order
+ *   int   CRC32 of the 64 bytes before it
+ * </pre>
+ */
+public class ScoreStore implements AutoCloseable {
+
+    public static final int MAGIC = 0x53524853; // "SRHS", marks a Space Race score log
+    public static final int VERSION = 1; // version of the file layout
+    public static final int HEADER_BYTES = 32; // size of the header before the first record
+    public static final int RECORD_BYTES = 68; // size of each record
+    public static final int TOP_SCORES = 10; // number of high scores kept
+    public static final int CHECKPOINT_EVERY = 1024; // matches between checkpoints
+    public static final long DEFAULT_MAX_RECORDS = 1 << 20; // matches held before the log is compacted, about 68 MB
+
+    private static final int INDEX_MAGIC = 0x53524858; // "SRHX", marks a checkpoint of the high scores
+    private static final int REGION_RECORDS = 1 << 14; // records in each mapped region of the log
+    private static final int CRC_OFFSET = RECORD_BYTES - 4; // position of the CRC in a record
+    private static final int SCORES_OFFSET = 32; // position of the ships' scores in a record
+    private static final int HITS_OFFSET = SCORES_OFFSET + 2 * GameState.MAX_SHIPS; // position of the ships' hits
+    private static final int SHIP_BITS = 3; // low bits of a high score entry holding the ship, enough for MAX_SHIPS
+    private static final Set<Path> OPEN = ConcurrentHashMap.newKeySet(); // logs open in this program, see open()
+
+    private final Path path; // the log file
+    private final Path indexPath; // the checkpoint file
+    private final long maxRecords; // matches held before the log is compacted
+    private final List<MappedByteBuffer> regions = new ArrayList<>(); // regions of the log mapped so far
+    private final byte[] scratch = new byte[RECORD_BYTES]; // a record being checked or written
+    private final CRC32 crc = new CRC32(); // checks and signs records
+    private final long[] top = new long[TOP_SCORES]; // high scores as record << SHIP_BITS | ship, best first
+    private final int[] topScores = new int[TOP_SCORES]; // score of each high score, for comparing without reading
+    private FileChannel channel; // the open log file
+    private long id; // id of the log, matched against the checkpoint's
+    private long count; // number of matches in the log
+    private long checkpointed; // number of matches covered by the last checkpoint written
+    private int topCount; // number of high scores known, up to TOP_SCORES
+    private long scanned; // records read when the log was opened, the ones after the checkpoint if it was used
+    private boolean tornRecordCleared; // whether a partly written record was cleared when the log was opened
+
+    /**
+     * A match read back from the log
+     */
+    public static class Match {
+
+        final long endedAt; // time the match ended, in milliseconds since 1970
+        final long seed; // seed of the match
+        final int asteroids; // number of asteroids in the match
+        final int matchTicks; // number of ticks the match lasted
+        final int courseHeight; // height of the long course, or 0 for a match in one window
+        final int[] scores; // each ship's score, from left to right
+        final int[] hits; // number of times each ship was hit
+
+        Match(ByteBuffer record, int at) {
+            this.endedAt = record.getLong(at);
+            this.seed = record.getLong(at + 8);
+            this.asteroids = record.getInt(at + 16);
+            this.matchTicks = record.getInt(at + 20);
+            this.courseHeight = record.getInt(at + 24);
+            int ships = Math.max(0, Math.min(GameState.MAX_SHIPS, record.getInt(at + 28)));
+            this.scores = new int[ships];
+            this.hits = new int[ships];
+            for (int s = 0; s < ships; s++) {
+                this.scores[s] = record.getChar(at + SCORES_OFFSET + 2 * s);
+                this.hits[s] = record.getChar(at + HITS_OFFSET + 2 * s);
+            }
+        }
+
+        /**
+         * @param ship index of a ship, from the left
+         * @return the ship's score
+         */
+        public int getScore(int ship) {
+            return scores[ship];
+        }
+
+        /**
+         * @param ship index of a ship, from the left
+         * @return number of times the ship was hit
+         */
+        public int getHits(int ship) {
+            return hits[ship];
+        }
+
+        /**
+         * @return number of ships in the match
+         */
+        public int getShips() {
+            return scores.length;
+        }
+
+        /**
+         * @return time the match ended, in milliseconds since 1970
+         */
+        public long getEndedAt() {
+            return endedAt;
+        }
+
+        /**
+         * @return seed of the match, which with its settings gives the same field again
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+    }
+
+    /**
+     * Constructor that opens a log with the default size limit, see ScoreStore(Path, long)
+     * @param path the log file, created if it doesn't exist
+     * @throws IOException if the log can't be opened, is open in another game or isn't a score log
+     */
+    public ScoreStore(Path path) throws IOException {
+        this(path, DEFAULT_MAX_RECORDS);
+    }
+
+    /**
+     * Constructor that opens a log, creating it if needed, clears a torn record at its end and finds the high scores
+     * @param path the log file, created if it doesn't exist
+     * @param maxRecords matches held before the log is compacted when closed
+     * @throws IOException if the log can't be opened, is open in another game or isn't a score log
+     */
+    public ScoreStore(Path path, long maxRecords) throws IOException {
+        this.path = path;
+        this.indexPath = path.resolveSibling(path.getFileName() + ".idx");
+        this.maxRecords = Math.max(2 * TOP_SCORES, maxRecords);
+        if (!OPEN.add(this.key())) {
+            throw new IOException(path + " is already open in this game");
+        }
+        try {
+            this.open();
+        } catch (IOException | RuntimeException e) {
+            OPEN.remove(this.key());
+            throw e;
+        }
+    }
+
+    /**
+     * Saves a finished match at the end of the log and flushes it to the file
+     * @param state the match, once it is over
+     * @param endedAt time the match ended, in milliseconds since 1970
+     * @return index of the match in the log
+     * @throws IOException if the record can't be written
+     */
+    public long append(GameState state, long endedAt) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(this.scratch);
+        record.putLong(0, endedAt);
+        record.putLong(8, state.getSeed());
+        record.putInt(16, state.getCourse() != null ? 0 : state.getAsteroids().size());
+        record.putInt(20, state.getMatchTicks());
+        record.putInt(24, state.getCourse() != null ? state.getHeight() : 0);
+        record.putInt(28, state.getShipCount());
+        for (int s = 0; s < GameState.MAX_SHIPS; s++) {
+            Ship ship = s < state.getShipCount() ? state.getShip(s) : null;
+            record.putChar(SCORES_OFFSET + 2 * s, (char) (ship != null ? ship.getScore() : 0));
+            record.putChar(HITS_OFFSET + 2 * s, (char) (ship != null ? ship.getHits() : 0));
+        }
+        this.crc.reset();
+        this.crc.update(this.scratch, 0, CRC_OFFSET);
+        record.putInt(CRC_OFFSET, (int) this.crc.getValue());
+
+        long index = this.count;
+        MappedByteBuffer region = this.region(index);
+        int at = offsetOf(index);
+        region.put(at, this.scratch);
+        region.force(at, RECORD_BYTES);
+        this.count++;
+        for (int s = 0; s < state.getShipCount(); s++) {
+            this.offer(index, s, state.getShip(s).getScore());
+        }
+        if (this.count - this.checkpointed >= CHECKPOINT_EVERY) {
+            this.checkpoint();
+        }
+        return index;
+    }
+
+    /**
+     * @return number of matches in the log
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param index index of a match, less than getCount()
+     * @return the match as it was saved
+     */
+    public Match read(long index) {
+        return new Match(this.region(index), offsetOf(index));
+    }
+
+    /**
+     * @return number of records read when the log was opened, which is every match if there was no usable checkpoint
+     */
+    public long getScanned() {
+        return scanned;
+    }
+
+    /**
+     * @return whether a record left partly written at the end of the log was cleared when it was opened
+     */
+    public boolean wasTornRecordCleared() {
+        return tornRecordCleared;
+    }
+
+    /**
+     * @return number of high scores, up to TOP_SCORES
+     */
+    public int getTopCount() {
+        return topCount;
+    }
+
+    /**
+     * @param rank place in the high scores, 0 for the best
+     * @return the score
+     */
+    public int getTopScore(int rank) {
+        return topScores[rank];
+    }
+
+    /**
+     * @param rank place in the high scores, 0 for the best
+     * @return index of the match the score was made in
+     */
+    public long getTopMatch(int rank) {
+        return top[rank] >> SHIP_BITS;
+    }
+
+    /**
+     * @param rank place in the high scores, 0 for the best
+     * @return index of the ship that made the score, from the left
+     */
+    public int getTopShip(int rank) {
+        return (int) (top[rank] & ((1 << SHIP_BITS) - 1));
+    }
+
+    /**
+     * Keeps the most recent matches and every match holding a high score, dropping the rest, by copying the kept ones
+     * forward over the dropped ones in order and clearing the records after them. Every record is only ever copied to
+     * its own place or to one that was dropped or already copied, so if the game stops part way through no match is
+     * lost; the log is then read from the start next time, as the checkpoint is deleted first
+     * @param keep number of most recent matches to keep
+     * @throws IOException if the log can't be written
+     */
+    public void compact(long keep) throws IOException {
+        Files.deleteIfExists(this.indexPath);
+        long from = Math.max(0, this.count - keep);
+        long kept = 0;
+        for (long i = 0; i < this.count; i++) {
+            if (i >= from || this.isTop(i)) {
+                if (kept != i) {
+                    this.region(i).get(offsetOf(i), this.scratch);
+                    this.region(kept).put(offsetOf(kept), this.scratch);
+                }
+                kept++;
+            }
+        }
+        Arrays.fill(this.scratch, (byte) 0);
+        for (long i = kept; i < this.count; i++) {
+            this.region(i).put(offsetOf(i), this.scratch);
+        }
+        for (MappedByteBuffer region : this.regions) {
+            region.force();
+        }
+
+        // a new id, so a checkpoint of the log from before can never be taken for one of this log
+        this.id = new Rng(System.nanoTime() ^ this.id).nextLong();
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putLong(0, this.id);
+        while (header.hasRemaining()) {
+            this.channel.write(header, 16 + header.position());
+        }
+        this.channel.force(true);
+
+        this.count = kept;
+        this.topCount = 0;
+        for (long i = 0; i < kept; i++) {
+            Match match = this.read(i);
+            for (int s = 0; s < match.getShips(); s++) {
+                this.offer(i, s, match.getScore(s));
+            }
+        }
+        this.checkpoint();
+    }
+
+    /**
+     * Saves a checkpoint, compacts the log if it has grown past its limit and closes it
+     * @throws IOException if the checkpoint can't be written or the log can't be compacted
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (this.count > this.maxRecords) {
+                this.compact(this.maxRecords / 2);
+            } else if (this.checkpointed != this.count) {
+                this.checkpoint();
+            }
+        } finally {
+            this.channel.close();
+            this.regions.clear();
+            OPEN.remove(this.key());
+        }
+    }
+
+    /**
+     * Opens and locks the log, writing a header if it is new, and finds where it ends and what its high scores are,
+     * starting from the checkpoint if there is a usable one
+     */
+    private void open() throws IOException {
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileLock lock = this.channel.tryLock(); // released when the channel is closed
+        if (lock == null) {
+            this.channel.close();
+            throw new IOException(this.path + " is already open in another game");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (this.channel.size() < HEADER_BYTES) {
+            writeHeader(header, new Rng(System.nanoTime()).nextLong());
+            header.flip();
+            this.channel.truncate(0);
+            writeFully(this.channel, header);
+            this.channel.force(true);
+            header.clear();
+        }
+        this.channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_BYTES) {
+            this.channel.close();
+            throw new IOException(this.path + " is not a score log");
+        }
+        this.id = header.getLong(16);
+
+        this.count = 0;
+        this.topCount = 0;
+        this.checkpointed = this.readCheckpoint();
+        this.count = this.checkpointed;
+        long capacity = (this.channel.size() - HEADER_BYTES) / RECORD_BYTES;
+        while (this.count < capacity && this.isValid(this.count)) {
+            Match match = this.read(this.count);
+            for (int s = 0; s < match.getShips(); s++) {
+                this.offer(this.count, s, match.getScore(s));
+            }
+            this.count++;
+        }
+        this.scanned = this.count - this.checkpointed;
+
+        // clears a record left half written, so it can't be mistaken for a match if the next one is torn as well
+        if (this.count < capacity && !this.isZero(this.count)) {
+            MappedByteBuffer region = this.region(this.count);
+            region.put(offsetOf(this.count), new byte[RECORD_BYTES]);
+            region.force(offsetOf(this.count), RECORD_BYTES);
+            this.tornRecordCleared = true;
+        }
+    }
+
+    /**
+     * Loads the high scores from the checkpoint, if it is whole, belongs to this log and covers records that are all
+     * still there
+     * @return number of matches the checkpoint covers, or 0 if it can't be used
+     */
+    private long readCheckpoint() throws IOException {
+        if (!Files.exists(this.indexPath)) {
+            return 0;
+        }
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(this.indexPath));
+        int size = 28 + 8 * TOP_SCORES + 4;
+        if (index.capacity() != size || index.getInt(0) != INDEX_MAGIC || index.getLong(4) != this.id) {
+            return 0;
+        }
+        this.crc.reset();
+        this.crc.update(index.array(), 0, size - 4);
+        long covered = index.getLong(12);
+        int entries = index.getInt(20);
+        long capacity = (this.channel.size() - HEADER_BYTES) / RECORD_BYTES;
+        if ((int) this.crc.getValue() != index.getInt(size - 4) || covered > capacity
+                || entries > TOP_SCORES || (covered > 0 && !this.isValid(covered - 1))) {
+            return 0;
+        }
+        for (int e = 0; e < entries; e++) {
+            long entry = index.getLong(28 + 8 * e);
+            Match match = entry >> SHIP_BITS < covered ? this.read(entry >> SHIP_BITS) : null;
+            int ship = (int) (entry & ((1 << SHIP_BITS) - 1));
+            if (match == null || ship >= match.getShips()) {
+                return 0;
+            }
+            this.top[e] = entry;
+            this.topScores[e] = match.getScore(ship);
+        }
+        this.topCount = entries;
+        return covered;
+    }
+
+    /**
+     * Writes the high scores and the number of matches they cover to the checkpoint file, through a temporary file
+     * that is moved into place once it is complete
+     */
+    private void checkpoint() throws IOException {
+        int size = 28 + 8 * TOP_SCORES + 4;
+        ByteBuffer index = ByteBuffer.allocate(size);
+        index.putInt(0, INDEX_MAGIC);
+        index.putLong(4, this.id);
+        index.putLong(12, this.count);
+        index.putInt(20, this.topCount);
+        for (int e = 0; e < this.topCount; e++) {
+            index.putLong(28 + 8 * e, this.top[e]);
+        }
+        this.crc.reset();
+        this.crc.update(index.array(), 0, size - 4);
+        index.putInt(size - 4, (int) this.crc.getValue());
+        Path temp = this.indexPath.resolveSibling(this.indexPath.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, index);
+            out.force(true);
+        }
+        Files.move(temp, this.indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.checkpointed = this.count;
+    }
+
+    /**
+     * Puts a score into the high scores if it is good enough. Ties go to the earlier match
+     * @param index index of the match
+     * @param ship index of the ship, from the left
+     * @param score the ship's score
+     */
+    private void offer(long index, int ship, int score) {
+        if (this.topCount == TOP_SCORES && score <= this.topScores[TOP_SCORES - 1]) {
+            return;
+        }
+        int at = this.topCount < TOP_SCORES ? this.topCount++ : TOP_SCORES - 1;
+        for (; at > 0 && this.topScores[at - 1] < score; at--) {
+            this.top[at] = this.top[at - 1];
+            this.topScores[at] = this.topScores[at - 1];
+        }
+        this.top[at] = index << SHIP_BITS | ship;
+        this.topScores[at] = score;
+    }
+
+    /**
+     * @return whether a match holds one of the high scores
+     */
+    private boolean isTop(long index) {
+        for (int e = 0; e < this.topCount; e++) {
+            if (this.top[e] >> SHIP_BITS == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the record at an index matches its CRC
+     */
+    private boolean isValid(long index) {
+        this.region(index).get(offsetOf(index), this.scratch);
+        this.crc.reset();
+        this.crc.update(this.scratch, 0, CRC_OFFSET);
+        return (int) this.crc.getValue() == ByteBuffer.wrap(this.scratch).getInt(CRC_OFFSET);
+    }
+
+    /**
+     * @return whether every byte of the record at an index is zero, as it is in space the file was grown by
+     */
+    private boolean isZero(long index) {
+        this.region(index).get(offsetOf(index), this.scratch);
+        for (byte b : this.scratch) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Maps the region of the log holding a record, growing the file if the region is past its end
+     * @param index index of the record
+     * @return the mapped region, big endian
+     */
+    private MappedByteBuffer region(long index) {
+        int r = (int) (index / REGION_RECORDS);
+        try {
+            while (this.regions.size() <= r) {
+                long start = HEADER_BYTES + (long) this.regions.size() * REGION_RECORDS * RECORD_BYTES;
+                MappedByteBuffer region = this.channel.map(FileChannel.MapMode.READ_WRITE, start,
+                        (long) REGION_RECORDS * RECORD_BYTES);
+                region.order(ByteOrder.BIG_ENDIAN);
+                this.regions.add(region);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.regions.get(r);
+    }
+
+    /**
+     * @return the log's path in the form kept in OPEN
+     */
+    private Path key() {
+        return this.path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return position of a record within its region
+     */
+    private static int offsetOf(long index) {
+        return (int) (index % REGION_RECORDS) * RECORD_BYTES;
+    }
+
+    /**
+     * Puts a log header with the given id at the start of a buffer, leaving the buffer positioned after it
+     */
+    private static void writeHeader(ByteBuffer buffer, long id) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(RECORD_BYTES);
+        buffer.putInt(0);
+        buffer.putLong(id);
+        buffer.putLong(0);
+    }
+
+    /**
+     * Writes everything left in a buffer to a file
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -1,5 +1,3 @@
-import processing.core.PApplet;
-import processing.core.PImage;
 import processing.core.PVector;
 
 /**
@@ -12,34 +10,113 @@ import processing.core.PVector;
  */
 public class Ship {
 
-    private Race app; // reference to main Race object
-    private PImage shipImg; // reference to image of a ship
+    public static final int HALF_WIDTH = 30; // distance from the center of the ship to either side of its triangle
+    public static final int BASE_OFFSET = 22; // distance from the center of the ship down to the base of its triangle
+    public static final int NOSE_OFFSET = 35; // distance from the center of the ship up to the tip of its triangle
+    public static final int SPEED = 2; // pixels the ship moves each tick a key is held, unless set otherwise
+    public static final int STATE_INTS = 6; // number of ints save() writes
+
+    private GameState state; // reference to the GameState this ship belongs to
+    private final int speed; // pixels the ship moves each tick a key is held
+    private final int halfWidth; // distance from the center of the ship to either side of its triangle
+    private final int baseOffset; // distance from the center of the ship down to the base of its triangle
+    private final int noseOffset; // distance from the center of the ship up to the tip of its triangle
     private int x; // reference to x position of object on screen
     private int y; // reference to y position of object on screen
+    private int lastY; // y position before the most recent tick, used to draw the ship between ticks
     private int score = 0; // score of object
+    private int hits = 0; // number of times an asteroid has hit the ship
     private boolean isUp; // movement determiner
     private boolean isDown; // movement determiner
 
     /**
      * Constructor for a Ship object
      * 
-     * @param app reference to the Race object that created this object
-     * @param x   the x coordinate of this object on the screen
-     * @param y   the x coordinate of this object on the screen
+     * @param state reference to the GameState that created this object
+     * @param x     the x coordinate of this object on the screen
+     * @param y     the x coordinate of this object on the screen
+     */
+    public Ship(GameState state, int x, int y) {
+        this(state, x, y, SPEED, 100);
+    }
+
+    /**
+     * Constructor for a Ship object that moves at another speed or has a triangle of another size, for trying out
+     * changes to the game's balance
+     * 
+     * @param state reference to the GameState that created this object
+     * @param x     the x coordinate of this object on the screen
+     * @param y     the x coordinate of this object on the screen
+     * @param speed pixels the ship moves each tick a key is held
+     * @param size  size of the ship's triangle as a percentage of the usual HALF_WIDTH, BASE_OFFSET and NOSE_OFFSET
      */
-    public Ship(Race app, int x, int y) {
-        this.app = app; // store a reference to the Race object
-        this.shipImg = app.loadImage("images/spaceship_green.png"); // load this specific image
+    public Ship(GameState state, int x, int y, int speed, int size) {
+        this.state = state; // store a reference to the GameState
+        this.speed = speed;
+        this.halfWidth = Math.round(HALF_WIDTH * size / 100f);
+        this.baseOffset = Math.round(BASE_OFFSET * size / 100f);
+        this.noseOffset = Math.round(NOSE_OFFSET * size / 100f);
 
         // store x and y coordinates of object on screen
         this.x = x;
         this.y = y;
+        this.lastY = y;
 
         // set movement in both directions to false
         this.isUp = false;
         this.isDown = false;
     }
 
+    /**
+     * @return x position of ship
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return pixels the ship moves each tick a key is held
+     */
+    public int getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return distance from the center of the ship to either side of its triangle
+     */
+    public int getHalfWidth() {
+        return halfWidth;
+    }
+
+    /**
+     * @return distance from the center of the ship down to the base of its triangle
+     */
+    public int getBaseOffset() {
+        return baseOffset;
+    }
+
+    /**
+     * @return distance from the center of the ship up to the tip of its triangle
+     */
+    public int getNoseOffset() {
+        return noseOffset;
+    }
+
+    /**
+     * @return y position of ship
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return y position of ship before the most recent tick, the same as getY()
+     *         if the ship has just respawned
+     */
+    public int getLastY() {
+        return lastY;
+    }
+
     /**
      * @return score of ship
      */
@@ -47,6 +124,13 @@ public class Ship {
         return score;
     }
 
+    /**
+     * @return number of times an asteroid has hit the ship
+     */
+    public int getHits() {
+        return hits;
+    }
+
     /**
      * Sets the scores based on the position of the ship, if ship at the top of the
      * screen,
@@ -64,6 +148,20 @@ public class Ship {
         }
     }
 
+    /**
+     * @return whether the ship is set to move up
+     */
+    public boolean isUp() {
+        return isUp;
+    }
+
+    /**
+     * @return whether the ship is set to move down
+     */
+    public boolean isDown() {
+        return isDown;
+    }
+
     /**
      * @param isUp boolean to determine whether up movement key pressed
      */
@@ -79,49 +177,85 @@ public class Ship {
     }
 
     /**
-     * Draws the ship object to a specified x and y location, checks what movement
-     * mode ship is in and
-     * whether it is within the bounds of the window and moves the ship up or down
-     * accordingly
+     * Checks what movement mode ship is in and whether it is within the bounds of
+     * the window and moves the ship up or down accordingly, then scores the ship if
+     * it has reached the top
      */
-    public void draw() {
-        this.app.imageMode(PApplet.CENTER); // setting so the image is drawn centered on the specified x and y coordinates
-        this.app.image(this.shipImg, this.x, this.y);
-
-        // allows ship to move up if "W" or UP has been pressed and ship isn't at top of
-        // window
+    public void update() {
+        this.lastY = this.y;
+        // allows ship to move up if its up key (such as "W" or UP) has been pressed and
+        // ship isn't at top of window
         if (this.isUp && this.y > 0) {
             this.moveUp();
 
-            // allows ship to move down if "S" or DOWN has been pressed and ship isn't at
-            // spawnpoint
-        } else if (this.isDown && this.y < this.app.height - 45) {
+            // allows ship to move down if its down key (such as "S" or DOWN) has been
+            // pressed and ship isn't at spawnpoint
+        } else if (this.isDown && this.y < this.state.getHeight() - 45) {
             this.moveDown();
         }
         this.setScore(score);
     }
 
     /**
-     * increments ship movement up by two pixels
+     * increments ship movement up by its speed, two pixels unless set otherwise
      */
     public void moveUp() {
-        this.y -= 2;
+        this.y -= this.speed;
     }
 
     /**
-     * increments ship movement down by 2 pixels
+     * increments ship movement down by its speed, two pixels unless set otherwise
      */
     public void moveDown() {
-        this.y += 2;
+        this.y += this.speed;
     }
 
     /**
-     * Resets ship's y coordinate to spawnpoint and resets movement determiners
+     * Counts a hit by an asteroid and respawns the ship
+     */
+    public void hit() {
+        this.hits++;
+        this.respawn();
+    }
+
+    /**
+     * Resets ship's y coordinate to spawnpoint. The movement determiners are left as they are, since they describe the
+     * keys the player is holding, so a player still holding "W" keeps flying up after being hit
      */
     public void respawn() {
-        this.y = this.app.height - 45;
-        this.isUp = false;
-        this.isDown = false;
+        this.y = this.state.getHeight() - 45;
+        this.lastY = this.y;
+    }
+
+    /**
+     * Copies everything about the ship that changes during a match into an array, so it can be put back exactly as it
+     * was with restore(). The ship's x position never changes, so it isn't saved
+     * 
+     * @param into   array to write into
+     * @param offset index to write the STATE_INTS ints at
+     */
+    public void save(int[] into, int offset) {
+        into[offset] = this.y;
+        into[offset + 1] = this.lastY;
+        into[offset + 2] = this.score;
+        into[offset + 3] = this.isUp ? 1 : 0;
+        into[offset + 4] = this.isDown ? 1 : 0;
+        into[offset + 5] = this.hits;
+    }
+
+    /**
+     * Puts the ship back as it was when save() wrote the array
+     * 
+     * @param from   array written by save()
+     * @param offset index save() wrote the ints at
+     */
+    public void restore(int[] from, int offset) {
+        this.y = from[offset];
+        this.lastY = from[offset + 1];
+        this.score = from[offset + 2];
+        this.isUp = from[offset + 3] != 0;
+        this.isDown = from[offset + 4] != 0;
+        this.hits = from[offset + 5];
     }
 
     /**
@@ -150,33 +284,48 @@ public class Ship {
     }
 
     /**
-     * Determines whether a point is within a triangle. It can be understood that if
-     * a point is in
-     * a triangle, the areas of 3 new triangles formed by separate pairs of the
-     * original triangle's
-     * vertices and the point must add up to the area of the original triangle. if
-     * these areas don't add
-     * up, the point is not in the triangle.
+     * Determines whether a point is within a triangle. Each edge of the triangle
+     * splits the plane in two, and the sign of the cross product of an edge with the
+     * vector from its start to the point tells which side the point is on. If the
+     * point is on the same side of all three edges (or on an edge), it is in the
+     * triangle.
      * 
      * Ex: Triangle ABC and point P
-     * Triangles formed: ABP, BCP, CAP
-     * If areas of ABP + BCP + CAP = ABC --> point P is within ABC, otherwise it is
-     * not
+     * Cross products checked: AB x AP, BC x BP, CA x CP
+     * If all three are >= 0, or all three are <= 0 --> point P is within ABC,
+     * otherwise it is not
+     * 
+     * This replaces the earlier check that the areas of ABP, BCP and CAP add up to
+     * the area of ABC, which compared float sums with == and so could miss points
+     * that really were inside.
      * 
      * @param pt a point to be checked against a triangle
      * @param a  a point in a triangle
      * @param b  a point in a triangle
      * @param c  a point in a triangle
-     * @return boolean for whether the three new triangles' area is equal to the
-     *         area of the original triangle
+     * @return boolean for whether the point is on the inside of all three edges
      */
     public boolean pointInTriangle(Point pt, Point a, Point b, Point c) {
-        float shipArea = area(a, b, c);
-        float tri1 = area(pt, a, b);
-        float tri2 = area(pt, b, c);
-        float tri3 = area(pt, c, a);
+        float e1 = (b.x - a.x) * (pt.y - a.y) - (b.y - a.y) * (pt.x - a.x);
+        float e2 = (c.x - b.x) * (pt.y - b.y) - (c.y - b.y) * (pt.x - b.x);
+        float e3 = (a.x - c.x) * (pt.y - c.y) - (a.y - c.y) * (pt.x - c.x);
 
-        return tri1 + tri2 + tri3 == shipArea;
+        return (e1 >= 0 && e2 >= 0 && e3 >= 0) || (e1 <= 0 && e2 <= 0 && e3 <= 0);
+    }
+
+    /**
+     * Same check as pointInTriangle(Point, Point, Point, Point) on integer
+     * coordinates. All of the arithmetic is done on ints, so the result is exact and
+     * nothing is allocated
+     * 
+     * @return whether (px, py) is within the triangle (ax, ay), (bx, by), (cx, cy)
+     */
+    public static boolean pointInTriangle(int px, int py, int ax, int ay, int bx, int by, int cx, int cy) {
+        int e1 = (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+        int e2 = (cx - bx) * (py - by) - (cy - by) * (px - bx);
+        int e3 = (ax - cx) * (py - cy) - (ay - cy) * (px - cx);
+
+        return (e1 >= 0 && e2 >= 0 && e3 >= 0) || (e1 <= 0 && e2 <= 0 && e3 <= 0);
     }
 
     /**
@@ -189,11 +338,58 @@ public class Ship {
      * @return whether an asteroid has collided with the ship
      */
     public boolean collision(Point asteroid) {
-        Point leftVertex = new Point(this.x - 30, this.y + 22);
-        Point rightVertex = new Point(this.x + 30, this.y + 22);
-        Point topVertex = new Point(this.x, this.y - 35);
+        Point leftVertex = new Point(this.x - this.halfWidth, this.y + this.baseOffset);
+        Point rightVertex = new Point(this.x + this.halfWidth, this.y + this.baseOffset);
+        Point topVertex = new Point(this.x, this.y - this.noseOffset);
 
         return pointInTriangle(asteroid, leftVertex, rightVertex, topVertex);
     }
 
+    /**
+     * Same check as collision(Point) for an asteroid given as two integer
+     * coordinates, using the exact integer pointInTriangle so it allocates nothing
+     * 
+     * @param ax x coordinate of the asteroid
+     * @param ay y coordinate of the asteroid
+     * @return whether the asteroid has collided with the ship
+     */
+    public boolean collision(int ax, int ay) {
+        return pointInTriangle(ax, ay,
+                this.x - this.halfWidth, this.y + this.baseOffset, // left vertex
+                this.x + this.halfWidth, this.y + this.baseOffset, // right vertex
+                this.x, this.y - this.noseOffset); // top vertex
+    }
+
+    /**
+     * Writes the ship's triangle into an array, in the layout used by
+     * AsteroidField.moveRange()
+     * 
+     * @param triangles array to write into
+     * @param offset    index to write the six coordinates at
+     */
+    public void triangle(int[] triangles, int offset) {
+        triangles[offset] = this.x - this.halfWidth; // left vertex
+        triangles[offset + 1] = this.y + this.baseOffset;
+        triangles[offset + 2] = this.x + this.halfWidth; // right vertex
+        triangles[offset + 3] = this.y + this.baseOffset;
+        triangles[offset + 4] = this.x; // top vertex
+        triangles[offset + 5] = this.y - this.noseOffset;
+    }
+
+    /**
+     * Checks a batch of asteroids against the ship at once
+     * 
+     * @param batch  the batch test to use, see TriangleBatch.create()
+     * @param xs     x coordinates of the asteroids
+     * @param ys     y coordinates of the asteroids
+     * @param count  number of asteroids to check, from the start of the arrays
+     * @return whether any of the asteroids has collided with the ship
+     */
+    public boolean collision(TriangleBatch batch, int[] xs, int[] ys, int count) {
+        return batch.anyInside(xs, ys, count,
+                this.x - this.halfWidth, this.y + this.baseOffset,
+                this.x + this.halfWidth, this.y + this.baseOffset,
+                this.x, this.y - this.noseOffset);
+    }
+
 }
@@ -0,0 +1,333 @@
+import java.util.Arrays;
+
+/**
+ * This is the ShipBot class. It is a computer player that flies one ship through the field by calling setUp() and
+ * setDown() before each tick, exactly as the keys do. Every asteroid moves one pixel per tick and wraps around the
+ * field in a way that can be worked out in advance (see AsteroidField.predictX()), so the bot can see where every
+ * asteroid will be on every future tick and plan a route to the top that no asteroid ever crosses.
+ *
+ * The plan is a search of a time-expanded grid: one row of cells per future tick, one cell per height the ship can be
+ * at. The ship only ever moves a whole step (its speed, 2 pixels unless set otherwise) from its spawn point, so a row
+ * is a bitset of a few longs, with a bit set for every height an asteroid would hit the ship at on that tick. The rows
+ * are kept in a ring of HORIZON ticks and worked out BATCH_TICKS at a time, by going through every asteroid once per
+ * batch and marking the ticks it crosses the ship's column. Rows only depend on the asteroids, so each is worked out
+ * once and used by every plan after it. The work is split across ticks: each call to control() looks at no more than a
+ * fixed budget of asteroids, so the bot's cost per tick stays the same however dense the field is, and a dense field
+ * only means the rows are filled in over a few ticks instead of one.
+ *
+ * Planning is then a breadth-first search through the rows: the heights the ship can reach on a tick are the heights it
+ * could reach on the tick before, one step up or down or staying put, minus the blocked ones, which is a couple of
+ * shifts and masks per long. The first tick the top is reached on gives the quickest safe route, which is traced back
+ * through the rows. A plan that reaches the top is followed until it is done. In a dense field the top often can't be
+ * reached within the known rows; the plan then climbs as early as it can towards the highest height that is still safe
+ * on the last known tick, and is remade whenever more rows are known, so the ship keeps making its way up a few rows
+ * at a time instead of waiting for a whole route. Most ticks still do no searching at all.
+ *
+ * The bot only plays matches in one window; the rows would be as tall as the whole course on a long course.
+ */
+public class ShipBot {
+
+    public static final int HORIZON = 512; // ticks ahead the bot can plan, a power of two
+    public static final int BATCH_TICKS = 64; // ticks of rows worked out in one pass over the asteroids
+    public static final int DEFAULT_BUDGET = 4096; // asteroids looked at per tick unless another budget is given
+
+    private final GameState state; // the match being played
+    private final Ship ship; // the ship the bot flies
+    private final AsteroidField field; // the asteroids being avoided
+    private final int budget; // most asteroids looked at per call to control()
+    private final int spawnY; // y position the ship respawns at, height 0 of the grid
+    private final int goal; // height of the grid at which the ship has reached the top and scored
+    private final int words; // longs in each row
+    private final long lastMask; // bits of the last long of a row that are heights
+    private final int speed; // pixels the ship moves in a tick, the distance between two heights of the grid
+    private final int[] top; // highest point of the ship's triangle in each column
+    private final long[] rows; // blocked heights of each tick, tick % HORIZON row by row
+    private final long[] reach; // heights the plan can reach on each tick, laid out like rows
+    private final int[] path = new int[HORIZON]; // height the plan has the ship at on each tick, by tick % HORIZON
+    private long known; // rows are worked out for every tick after the current one up to (not including) this
+    private long batchStart = -1; // first tick of the batch being worked out, or -1 if there isn't one
+    private int cursor; // next asteroid to look at in the batch
+    private long planFrom = -1; // tick the plan starts at, or -1 if there is no plan
+    private long planTo; // last tick of the plan
+    private boolean planComplete; // whether the plan ends at the top
+    private long plannedWith; // value of known when the plan was made
+    private long worstNanos; // longest any call to control() has taken
+
+    /**
+     * Constructor for a bot with the default budget, see ShipBot(GameState, Ship, int)
+     * @param state the match to play
+     * @param ship the ship to fly, one of the state's ships
+     */
+    public ShipBot(GameState state, Ship ship) {
+        this(state, ship, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Constructor for a bot that flies one ship of a match, before or during it
+     * @param state the match to play, which must be in one window
+     * @param ship the ship to fly, one of the state's ships
+     * @param budget most asteroids to look at per tick, at least 1
+     * @throws IllegalArgumentException if the match is on a long course
+     */
+    public ShipBot(GameState state, Ship ship, int budget) {
+        if (state.getCourse() != null) {
+            throw new IllegalArgumentException("The bot only plays matches in one window");
+        }
+        this.state = state;
+        this.ship = ship;
+        this.field = state.getAsteroids();
+        this.budget = Math.max(1, budget);
+        this.spawnY = state.getHeight() - 45;
+        this.speed = ship.getSpeed();
+        this.goal = ceilDiv(this.spawnY, this.speed);
+        this.words = (this.goal + 64) / 64;
+        int lastBits = (this.goal + 1) % 64;
+        this.lastMask = lastBits == 0 ? -1L : (1L << lastBits) - 1;
+        this.rows = new long[HORIZON * this.words];
+        this.reach = new long[HORIZON * this.words];
+        this.known = state.getTickCount() + 1;
+
+        // finds the highest point of the ship's triangle in each column, relative to its centre
+        int halfWidth = ship.getHalfWidth();
+        this.top = new int[2 * halfWidth + 1];
+        for (int rx = -halfWidth; rx <= halfWidth; rx++) {
+            int ry = -ship.getNoseOffset();
+            while (!Ship.pointInTriangle(rx, ry, -halfWidth, ship.getBaseOffset(), halfWidth, ship.getBaseOffset(),
+                    0, -ship.getNoseOffset())) {
+                ry++;
+            }
+            this.top[rx + halfWidth] = ry;
+        }
+    }
+
+    /**
+     * Decides the ship's move for the next tick and sets it with setUp() and setDown(). Should be called just before
+     * every tick, after anything else that sets the ship's movement
+     */
+    public void control() {
+        long start = System.nanoTime();
+        long now = this.state.getTickCount();
+        int height = (this.spawnY - this.ship.getY()) / this.speed;
+        this.work(now);
+        if (!this.following(now, height)) {
+            this.plan(now, height);
+        }
+        int move = this.planTo > now ? this.path[(int) ((now + 1) & (HORIZON - 1))] - height : 0;
+        this.ship.setUp(move > 0);
+        this.ship.setDown(move < 0);
+        this.worstNanos = Math.max(this.worstNanos, System.nanoTime() - start);
+    }
+
+    /**
+     * @return longest any call to control() has taken, in nanoseconds
+     */
+    public long getWorstNanos() {
+        return worstNanos;
+    }
+
+    /**
+     * @return the ship the bot flies
+     */
+    public Ship getShip() {
+        return ship;
+    }
+
+    /**
+     * Works out rows for as many asteroids as the budget allows, starting a new batch whenever one is finished and
+     * there is room in the ring for it
+     */
+    private void work(long now) {
+        int left = this.budget;
+        while (left > 0) {
+            if (this.batchStart == -1) {
+                this.known = Math.max(this.known, now + 1);
+                if (this.known + BATCH_TICKS > now + HORIZON) {
+                    return; // the ring is full of rows still to come
+                }
+                this.batchStart = this.known;
+                this.cursor = 0;
+                for (long t = this.batchStart; t < this.batchStart + BATCH_TICKS; t++) {
+                    int row = (int) (t & (HORIZON - 1)) * this.words;
+                    Arrays.fill(this.rows, row, row + this.words, 0L);
+                }
+            }
+            int end = (int) Math.min(this.field.size(), (long) this.cursor + left);
+            for (int i = this.cursor; i < end; i++) {
+                this.mark(i, now);
+            }
+            left -= end - this.cursor;
+            this.cursor = end;
+            if (this.cursor == this.field.size()) {
+                this.known = this.batchStart + BATCH_TICKS;
+                this.batchStart = -1;
+            }
+        }
+    }
+
+    /**
+     * Marks the heights an asteroid blocks on each tick of the batch that it crosses the ship's column. The asteroid
+     * is only placed once, at the start of the batch, and every tick after that is counted on from there, so the cost
+     * is the same however many times it crosses
+     */
+    private void mark(int i, long now) {
+        long from = Math.max(this.batchStart, now + 1);
+        long to = this.batchStart + BATCH_TICKS;
+        int x = this.field.predictX(i, from - now);
+        int left = this.ship.getX() - this.ship.getHalfWidth();
+        int right = this.ship.getX() + this.ship.getHalfWidth();
+        int width = this.state.getWidth();
+        int ay = this.field.getY(i);
+        long t;
+        int ax;
+        if (!this.field.isGoingLeft(i)) {
+            if (x >= left && x <= right) {
+                t = from;
+                ax = x;
+            } else {
+                t = from + (x < left ? left - x : width - x + left); // right of the column it wraps round first
+                ax = left;
+            }
+            while (t < to) {
+                for (; ax <= right && t < to; ax++, t++) {
+                    this.block(t, ax, ay);
+                }
+                t += width - ax + left; // goes round to the left edge and back to the column
+                ax = left;
+            }
+        } else {
+            if (x >= left && x <= right) {
+                t = from;
+                ax = x;
+            } else {
+                t = from + (x > right ? x - right : Math.max(x, 1) + width - right); // wraps round to the right first
+                ax = right;
+            }
+            while (t < to) {
+                for (; ax >= left && t < to; ax--, t++) {
+                    this.block(t, ax, ay);
+                }
+                t += ax + width - right; // goes round to the right edge and back to the column
+                ax = right;
+            }
+        }
+    }
+
+    /**
+     * Sets the bits of a tick's row for every height at which the ship would have an asteroid inside it
+     */
+    private void block(long t, int ax, int ay) {
+        int rx = ax - this.ship.getX();
+        int low = Math.max(0, ceilDiv(this.spawnY - ay + this.top[rx + this.ship.getHalfWidth()], this.speed));
+        int high = Math.min(this.goal - 1, Math.floorDiv(this.spawnY - ay + this.ship.getBaseOffset(), this.speed));
+        int row = (int) (t & (HORIZON - 1)) * this.words;
+        for (int w = low >> 6; w <= high >> 6 && low <= high; w++) {
+            long bits = -1L;
+            if (w == low >> 6) {
+                bits &= -1L << low;
+            }
+            if (w == high >> 6) {
+                bits &= -1L >>> (63 - (high & 63));
+            }
+            this.rows[row + w] |= bits;
+        }
+    }
+
+    /**
+     * @return whether the ship is where the plan expects it to be and the plan is still worth following
+     */
+    private boolean following(long now, int height) {
+        return this.planFrom != -1 && this.planFrom <= now && now < this.planTo
+                && this.path[(int) (now & (HORIZON - 1))] == height
+                && (this.planComplete || this.plannedWith == this.known);
+    }
+
+    /**
+     * Searches the known rows for the quickest safe route to the top from where the ship is now. If the top can't be
+     * reached within them, the route ends at the highest height that can be reached on the last known tick instead (a
+     * height that can be reached earlier might have no way on from it), and climbs as early as it can on the way there,
+     * so the ship gains ground now rather than on a later tick that another plan will have replaced by then
+     */
+    private void plan(long now, int height) {
+        int words = this.words;
+        int at = (int) (now & (HORIZON - 1)) * words;
+        Arrays.fill(this.reach, at, at + words, 0L);
+        this.reach[at + (height >> 6)] |= 1L << height;
+        long end = now;
+        for (long t = now + 1; t < this.known && t < now + HORIZON; t++) {
+            int prev = (int) ((t - 1) & (HORIZON - 1)) * words;
+            int row = (int) (t & (HORIZON - 1)) * words;
+            boolean any = false;
+            for (int w = 0; w < words; w++) {
+                long here = this.reach[prev + w];
+                long up = here << 1 | (w > 0 ? this.reach[prev + w - 1] >>> 63 : 0);
+                long down = here >>> 1 | (w < words - 1 ? this.reach[prev + w + 1] << 63 : 0);
+                long next = (here | up | down) & ~this.rows[row + w];
+                if (w == words - 1) {
+                    next &= this.lastMask;
+                }
+                this.reach[row + w] = next;
+                any |= next != 0;
+            }
+            if (!any) {
+                break;
+            }
+            end = t;
+            if (this.highest(row) == this.goal) {
+                break;
+            }
+        }
+
+        // traces the route back from the highest cell of the last tick, always through a cell that was reachable. A
+        // route to the top climbs as late as it can, and a route that stops short as early as it can
+        int h = end > now ? this.highest((int) (end & (HORIZON - 1)) * words) : height;
+        boolean complete = h == this.goal && end > now;
+        this.path[(int) (end & (HORIZON - 1))] = h;
+        for (long t = end - 1; t >= now; t--) {
+            int row = (int) (t & (HORIZON - 1)) * words;
+            if (complete) {
+                if (h > 0 && this.isSet(row, h - 1)) {
+                    h--;
+                } else if (!this.isSet(row, h)) {
+                    h++;
+                }
+            } else if (h < this.goal && this.isSet(row, h + 1)) {
+                h++;
+            } else if (!this.isSet(row, h)) {
+                h--;
+            }
+            this.path[(int) (t & (HORIZON - 1))] = h;
+        }
+        this.planFrom = now;
+        this.planTo = end;
+        this.planComplete = complete;
+        this.plannedWith = this.known;
+    }
+
+    /**
+     * @return highest height set in a row of reach
+     */
+    private int highest(int row) {
+        for (int w = this.words - 1; w >= 0; w--) {
+            long bits = this.reach[row + w];
+            if (bits != 0) {
+                return w * 64 + 63 - Long.numberOfLeadingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether a height is set in a row of reach
+     */
+    private boolean isSet(int row, int h) {
+        return (this.reach[row + (h >> 6)] & 1L << h) != 0;
+    }
+
+    /**
+     * @return n / d rounded up
+     */
+    private static int ceilDiv(int n, int d) {
+        return -Math.floorDiv(-n, d);
+    }
+
+}
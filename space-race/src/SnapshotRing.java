@@ -0,0 +1,58 @@
+/**
+ * This is the SnapshotRing class. It keeps a GameSnapshot of each of the last few ticks of a match, taken just before
+ * each tick was simulated, in a fixed ring of slots indexed by tick number. Saving a new tick overwrites the oldest
+ * one, so the ring never allocates after it is created, and the state can be rewound to any tick still in the ring.
+ */
+public class SnapshotRing {
+
+    private final GameSnapshot[] slots; // one snapshot per tick, tick t is kept in slot t % slots.length
+
+    /**
+     * Constructor that creates every snapshot the ring will ever use
+     * @param state the state the snapshots will be taken of
+     * @param capacity number of ticks to keep
+     */
+    public SnapshotRing(GameState state, int capacity) {
+        this.slots = new GameSnapshot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = new GameSnapshot(state);
+        }
+    }
+
+    /**
+     * Saves the state as it is before its next tick, replacing the tick that was capacity() ticks earlier
+     * @param state the state to save
+     */
+    public void save(GameState state) {
+        state.save(this.slots[(int) (state.getTickCount() % this.slots.length)]);
+    }
+
+    /**
+     * @param tick a tick number
+     * @return whether the state from just before that tick is still in the ring
+     */
+    public boolean contains(long tick) {
+        return tick >= 0 && this.slots[(int) (tick % this.slots.length)].getTick() == tick;
+    }
+
+    /**
+     * Rewinds the state to just before a tick
+     * @param state the state to rewind
+     * @param tick the tick to go back to, which must still be in the ring
+     * @throws IllegalArgumentException if the tick isn't in the ring
+     */
+    public void restore(GameState state, long tick) {
+        if (!this.contains(tick)) {
+            throw new IllegalArgumentException("Tick " + tick + " is no longer in the snapshot ring");
+        }
+        state.restore(this.slots[(int) (tick % this.slots.length)]);
+    }
+
+    /**
+     * @return number of ticks the ring keeps
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+}
@@ -0,0 +1,214 @@
+import java.util.Arrays;
+
+/**
+ * This is the TickWheel class. It is a hashed timing wheel: a scheduler for events that should happen a number of
+ * ticks from now, counted in game ticks rather than read from the clock. The wheel is a ring of SLOTS lists, and an
+ * event due on tick t is kept in the list for slot t % SLOTS. Scheduling and cancelling take the same time however
+ * many events are waiting, and each tick only walks the list for that tick's slot: the events due on it, plus any due
+ * a whole number of turns of the wheel later, which stay in the list until the wheel comes round to their tick. With
+ * events spread evenly that is about 1 / SLOTS of the events waiting, and when every event is due within SLOTS ticks,
+ * as the game's are, it is only the events that fire.
+ *
+ * An event is a kind and an argument (for example "respawn" and a ship index) that are handed to a Handler when it is
+ * due. Its handle is its index in the arrays with the index's generation above it, which goes up every time the
+ * index is freed, so a handle kept after its event fired or was cancelled can't cancel a later event given the same
+ * index. Events are stored in primitive arrays with intrusive linked lists, the same way as AsteroidGrid, so scheduling
+ * allocates nothing once the arrays are big enough, and the whole wheel can be copied with copyFrom() to save and
+ * restore it along with the rest of a GameState.
+ */
+public class TickWheel {
+
+    public static final int SLOTS = 256; // number of lists in the ring, a power of two
+
+    /**
+     * Receives events as they become due
+     */
+    public interface Handler {
+
+        /**
+         * @param kind kind of the event, as passed to schedule()
+         * @param arg argument of the event, as passed to schedule()
+         */
+        void fire(int kind, int arg);
+
+    }
+
+    private final int[] head = new int[SLOTS]; // first event in each slot, or -1 if the slot is empty
+    private int[] next; // next event in the same slot, or in the free list, or -1
+    private int[] prev; // previous event in the same slot, or -1
+    private int[] generation; // number of times each event has been freed, kept in its handle
+    private long[] due; // tick each event is due on, or -1 if the event isn't scheduled
+    private int[] kind; // kind of each event
+    private int[] arg; // argument of each event
+    private int free; // first unused event, or -1 if every event is in use
+    private int size; // number of events scheduled
+    private long now; // number of ticks the wheel has been advanced
+    private int removals; // counts every event removed, to notice a handler cancelling part of the list being walked
+
+    /**
+     * Constructor for an empty wheel at tick 0
+     * @param capacity number of events that can be scheduled before the arrays have to grow
+     */
+    public TickWheel(int capacity) {
+        Arrays.fill(this.head, -1);
+        this.next = new int[0];
+        this.prev = new int[0];
+        this.generation = new int[0];
+        this.due = new long[0];
+        this.kind = new int[0];
+        this.arg = new int[0];
+        this.free = -1;
+        this.grow(Math.max(1, capacity));
+    }
+
+    /**
+     * Schedules an event
+     * @param delay number of ticks from now that the event is due, at least 1
+     * @param kind kind of the event, handed back to the Handler
+     * @param arg argument of the event, handed back to the Handler
+     * @return a handle for the event, which can be passed to cancel() until the event fires
+     */
+    public long schedule(long delay, int kind, int arg) {
+        if (this.free == -1) {
+            this.grow(this.due.length * 2);
+        }
+        int e = this.free;
+        this.free = this.next[e];
+        long due = this.now + Math.max(1, delay);
+        this.due[e] = due;
+        this.kind[e] = kind;
+        this.arg[e] = arg;
+
+        // adds the event to the front of its slot's list
+        int slot = (int) (due & (SLOTS - 1));
+        this.prev[e] = -1;
+        this.next[e] = this.head[slot];
+        if (this.head[slot] != -1) {
+            this.prev[this.head[slot]] = e;
+        }
+        this.head[slot] = e;
+        this.size++;
+        return (long) this.generation[e] << 32 | e;
+    }
+
+    /**
+     * Removes an event that hasn't fired yet
+     * @param handle handle returned by schedule()
+     * @return whether the event was still scheduled
+     */
+    public boolean cancel(long handle) {
+        int e = (int) handle;
+        if (e < 0 || e >= this.due.length || this.due[e] == -1 || this.generation[e] != (int) (handle >>> 32)) {
+            return false;
+        }
+        this.remove(e);
+        return true;
+    }
+
+    /**
+     * Moves the wheel on by one tick and hands every event due on the new tick to a handler. Events the handler
+     * schedules are never due before the next tick, so they aren't fired by this call, and events it cancels won't fire
+     * @param handler receives the events that are due
+     */
+    public void advance(Handler handler) {
+        this.now++;
+        int slot = (int) (this.now & (SLOTS - 1));
+        int e = this.head[slot];
+        while (e != -1) {
+            int following = this.next[e];
+            if (this.due[e] == this.now) {
+                int kind = this.kind[e];
+                int arg = this.arg[e];
+                this.remove(e);
+                int removals = this.removals;
+                handler.fire(kind, arg);
+
+                // new events go to the front of a list, so only a cancel can unlink the next event; if the handler
+                // cancelled anything, start the slot again
+                if (removals != this.removals) {
+                    following = this.head[slot];
+                }
+            }
+            e = following;
+        }
+    }
+
+    /**
+     * Makes this wheel an exact copy of another, including the handles of its events. Nothing is allocated unless the
+     * other wheel has grown bigger than this one
+     * @param other the wheel to copy
+     */
+    public void copyFrom(TickWheel other) {
+        if (this.due.length != other.due.length) {
+            this.next = new int[other.due.length];
+            this.prev = new int[other.due.length];
+            this.generation = new int[other.due.length];
+            this.due = new long[other.due.length];
+            this.kind = new int[other.due.length];
+            this.arg = new int[other.due.length];
+        }
+        System.arraycopy(other.head, 0, this.head, 0, SLOTS);
+        System.arraycopy(other.next, 0, this.next, 0, other.next.length);
+        System.arraycopy(other.prev, 0, this.prev, 0, other.prev.length);
+        System.arraycopy(other.generation, 0, this.generation, 0, other.generation.length);
+        System.arraycopy(other.due, 0, this.due, 0, other.due.length);
+        System.arraycopy(other.kind, 0, this.kind, 0, other.kind.length);
+        System.arraycopy(other.arg, 0, this.arg, 0, other.arg.length);
+        this.free = other.free;
+        this.size = other.size;
+        this.now = other.now;
+    }
+
+    /**
+     * @return number of ticks the wheel has been advanced
+     */
+    public long getNow() {
+        return now;
+    }
+
+    /**
+     * @return number of events waiting to fire
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Unlinks an event from its slot and puts it on the free list
+     */
+    private void remove(int e) {
+        if (this.prev[e] != -1) {
+            this.next[this.prev[e]] = this.next[e];
+        } else {
+            this.head[(int) (this.due[e] & (SLOTS - 1))] = this.next[e];
+        }
+        if (this.next[e] != -1) {
+            this.prev[this.next[e]] = this.prev[e];
+        }
+        this.due[e] = -1;
+        this.generation[e]++;
+        this.next[e] = this.free;
+        this.free = e;
+        this.size--;
+        this.removals++;
+    }
+
+    /**
+     * Makes room for more events, adding the new ones to the free list
+     */
+    private void grow(int capacity) {
+        int old = this.due.length;
+        this.next = Arrays.copyOf(this.next, capacity);
+        this.prev = Arrays.copyOf(this.prev, capacity);
+        this.generation = Arrays.copyOf(this.generation, capacity);
+        this.due = Arrays.copyOf(this.due, capacity);
+        this.kind = Arrays.copyOf(this.kind, capacity);
+        this.arg = Arrays.copyOf(this.arg, capacity);
+        for (int e = capacity - 1; e >= old; e--) {
+            this.due[e] = -1;
+            this.next[e] = this.free;
+            this.free = e;
+        }
+    }
+
+}
@@ -1,17 +1,24 @@
-import java.time.Duration;
-import java.time.Instant;
-
 /**
  * This is the Timer class. In classic Space Race, there is a decreasing white bar in the middle of the screen that
- * represents the time left in the game and can be adjusted to represent time between 45 seconds and three minutes. In 
- * my implementaion, the timer is represented by a rectangle that disappears after one minute, so my game runs for one minute. 
- * The bar is green until it gets to 50 pixels above the bottom of the window, at which point it turns red. 
+ * represents the time left in the game and can be adjusted to represent time between 45 seconds and three minutes. In
+ * my implementaion, the timer is represented by a rectangle that shrinks by STEP_PIXELS at a time until it disappears
+ * after the match length the GameState was created with (62.5 seconds unless another length is chosen).
+ * The bar is green until it gets to 50 pixels above the bottom of the window, at which point it turns red.
  * Once the bar disappears, the game ends.
+ *
+ * The timer doesn't count ticks or read the clock itself: the GameState schedules an event on its TickWheel for the
+ * tick of each step (see ticksUntilNextStep()) and calls step() when it fires, so a headless match runs its full
+ * length in however little time it takes to simulate it.
  */
 public class Timer {
 
-    private Race app; // reference to main Race object
-    private Instant lastUpdate; // a moment to compare elasped time
+    public static final int STEP_PIXELS = 4; // pixels the bar shrinks by on each step
+    public static final int FULL_HEIGHT = 500; // height of the bar at the start of a match
+    public static final int STEPS = FULL_HEIGHT / STEP_PIXELS; // number of steps until the bar disappears
+    public static final int STATE_INTS = 3; // number of ints save() writes
+
+    private GameState state; // reference to the GameState this timer belongs to
+    private int steps; // number of times the bar has shrunk
     private int x; // reference to x position of object on screen
     private int y; // reference to y position of object on screen
     private int width; // reference to width of object on screen
@@ -19,18 +26,18 @@ public class Timer {
 
     /**
      * Constructor for a Timer object halfway across the window, 100 pixels below the top of the window
-     * @param app
+     * @param state a reference to the GameState that created this object
      */
-    public Timer(Race app) {
-        this.app = app; // stores a reference to the main Race object 
+    public Timer(GameState state) {
+        this.state = state; // stores a reference to the GameState
 
         // stores specific x and y coordinates to draw the bar at
-        this.x = (this.app.width / 2) - 5;
+        this.x = (this.state.getWidth() / 2) - 5;
         this.y = 100;
 
         // stores the specific width and height of the bar
         this.width = 10;
-        this.height = 500;
+        this.height = FULL_HEIGHT;
     }
 
     /**
@@ -41,38 +48,81 @@ public class Timer {
     }
 
     /**
-     * Draws a rectangle of specific width and height to the x and y coordinates specified in the constructor. In the first call,
-     * draw() will check the time twice and store the duration between the two moments. In the rest of the calls, it'll check the time
-     * once after the bar is drawn and once again after the interval is at least half a second. If this is the case it will change 
-     * the height and the y position of the rectangle by a certain amount, which will make the rectangle look like a decreasing bar.
+     * @return whether the bar has reached 50 pixels above the bottom of the window and should be drawn red
+     */
+    public boolean isRunningOut() {
+        return this.y >= 550;
+    }
+
+    /**
+     * Shrinks the bar by one step: the height and the y position of the rectangle change by a certain amount, which
+     * will make the rectangle look like a decreasing bar
+     */
+    public void step() {
+        this.steps++;
+        this.y += STEP_PIXELS;
+        this.height -= STEP_PIXELS;
+    }
+
+    /**
+     * Steps are spread evenly over the match, step k being due on tick k * matchTicks / STEPS, so the bar disappears on
+     * the last tick of the match whatever its length
+     * @param now number of ticks played so far
+     * @return number of ticks from now until the bar's next step is due
+     */
+    public long ticksUntilNextStep(long now) {
+        return (long) (this.steps + 1) * this.state.getMatchTicks() / STEPS - now;
+    }
+
+    /**
+     * Copies everything about the timer that changes during a match into an array, so it can be put back exactly as it
+     * was with restore()
+     * @param into array to write into
+     * @param offset index to write the STATE_INTS ints at
+     */
+    public void save(int[] into, int offset) {
+        into[offset] = this.steps;
+        into[offset + 1] = this.y;
+        into[offset + 2] = this.height;
+    }
+
+    /**
+     * Puts the timer back as it was when save() wrote the array
+     * @param from array written by save()
+     * @param offset index save() wrote the ints at
+     */
+    public void restore(int[] from, int offset) {
+        this.steps = from[offset];
+        this.y = from[offset + 1];
+        this.height = from[offset + 2];
+    }
+
+    /**
+     * @return x position of the bar
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return y position of the top of the bar
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return width of the bar
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the bar
      */
-    public void draw() {
-
-        // changes the rectangle's color to red if its y position reaches 50 pixels above the bottom of the window
-        if (this.y >= 550) {
-            this.app.fill(255, 0, 0);
-
-        // keeps the color green if not at 50 pixels above the bottom
-        } else {
-            this.app.fill(0, 255, 0);
-        }
-        this.app.rect(this.x, this.y, this.width, this.height); // draws rectangle
-
-        // checks time here in first iteration because lastUpdate starts as null
-        if (lastUpdate == null) {
-            lastUpdate = Instant.now();
-        }
-
-        // will always check the time here to compare it to the lastest update
-        Instant checkTime = Instant.now();
-        long interval = Duration.between(lastUpdate, checkTime).toMillis(); // stores the duration between moments
-        
-        // if the interval is >= half a second, time will be checked again and bar will get smaller
-        if (interval >= 500) {
-            lastUpdate = Instant.now();
-            this.y += 4;
-            this.height -= 4;
-        }
+    public int getHeight() {
+        return height;
     }
 
 }
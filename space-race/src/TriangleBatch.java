@@ -0,0 +1,34 @@
+/**
+ * This is the TriangleBatch interface. It checks a whole array of points against one triangle at a time, which is how
+ * the narrow phase of collision detection tests the asteroids the broad phase found near a ship. There are two
+ * implementations: VectorTriangleBatch, which uses the incubating jdk.incubator.vector API to check several points per
+ * instruction, and ScalarTriangleBatch, which checks one point at a time and works on any JVM. Both give exactly the
+ * same answers as Ship.pointInTriangle(int, int, int, int, int, int, int, int).
+ */
+public interface TriangleBatch {
+
+    /**
+     * @param xs    x coordinates of the points
+     * @param ys    y coordinates of the points
+     * @param count number of points to check, from the start of the arrays
+     * @return whether any of the points is within the triangle (ax, ay), (bx, by), (cx, cy)
+     */
+    boolean anyInside(int[] xs, int[] ys, int count, int ax, int ay, int bx, int by, int cx, int cy);
+
+    /**
+     * Picks the vectorized implementation when the JVM was started with "--add-modules jdk.incubator.vector",
+     * and the scalar one otherwise
+     * @return a TriangleBatch for this JVM
+     */
+    static TriangleBatch create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (TriangleBatch) Class.forName("VectorTriangleBatch").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // falls through to the scalar version if the vector class can't be loaded on this JVM
+            }
+        }
+        return new ScalarTriangleBatch();
+    }
+
+}
@@ -0,0 +1,55 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This is the VectorTriangleBatch class. It does the same edge function check as Ship.pointInTriangle, but on as many
+ * points at once as the CPU's vector registers hold (8 ints with AVX2). Each edge function is rewritten as
+ * A * y - B * x + C with A, B and C worked out once per triangle, so a lane costs two multiplies and two adds per edge.
+ *
+ * This class uses the incubating Vector API, so it has to be compiled and run with
+ * "--add-modules jdk.incubator.vector". It is only ever loaded through TriangleBatch.create(), which falls back to
+ * ScalarTriangleBatch otherwise.
+ */
+public class VectorTriangleBatch implements TriangleBatch {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED; // widest int vector on this CPU
+
+    @Override
+    public boolean anyInside(int[] xs, int[] ys, int count, int ax, int ay, int bx, int by, int cx, int cy) {
+
+        // coefficients of the edge functions for AB, BC and CA
+        int a1 = bx - ax, b1 = by - ay, c1 = b1 * ax - a1 * ay;
+        int a2 = cx - bx, b2 = cy - by, c2 = b2 * bx - a2 * by;
+        int a3 = ax - cx, b3 = ay - cy, c3 = b3 * cx - a3 * cy;
+
+        int i = 0;
+        int bound = SPECIES.loopBound(count);
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector px = IntVector.fromArray(SPECIES, xs, i);
+            IntVector py = IntVector.fromArray(SPECIES, ys, i);
+            IntVector e1 = py.mul(a1).sub(px.mul(b1)).add(c1);
+            IntVector e2 = py.mul(a2).sub(px.mul(b2)).add(c2);
+            IntVector e3 = py.mul(a3).sub(px.mul(b3)).add(c3);
+            VectorMask<Integer> allAbove = e1.compare(VectorOperators.GE, 0)
+                    .and(e2.compare(VectorOperators.GE, 0))
+                    .and(e3.compare(VectorOperators.GE, 0));
+            VectorMask<Integer> allBelow = e1.compare(VectorOperators.LE, 0)
+                    .and(e2.compare(VectorOperators.LE, 0))
+                    .and(e3.compare(VectorOperators.LE, 0));
+            if (allAbove.or(allBelow).anyTrue()) {
+                return true;
+            }
+        }
+
+        // checks the points left over after the last full vector one at a time
+        for (; i < count; i++) {
+            if (Ship.pointInTriangle(xs[i], ys[i], ax, ay, bx, by, cx, cy)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests that InputQueue hands over every event it has room for, in order and with its time, and counts the ones it
+ * has to drop
+ */
+public class InputQueueTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        InputQueue queue = new InputQueue(5);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(queue.offer(i, i));
+        }
+        assertFalse(queue.offer(8, 8));
+    }
+
+    @Test
+    public void eventsKeepTheirOrderAndTimesAcrossTheEndOfTheRing() {
+        InputQueue queue = new InputQueue(4);
+        List<long[]> drained = new ArrayList<>();
+        int next = 0;
+
+        // fills and drains the queue unevenly many times over, so events keep crossing from the last slot to the first
+        for (int round = 0; round < 50; round++) {
+            int count = 1 + round % 4;
+            for (int k = 0; k < count; k++) {
+                assertTrue(queue.offer(next, 1000L + next));
+                next++;
+            }
+            assertEquals(count, queue.drain((event, nanos) -> drained.add(new long[] { event, nanos })));
+        }
+        assertEquals(next, drained.size());
+        for (int i = 0; i < next; i++) {
+            assertEquals(i, drained.get(i)[0]);
+            assertEquals(1000L + i, drained.get(i)[1]);
+        }
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void eventsOfferedWhileFullAreDroppedAndCounted() {
+        InputQueue queue = new InputQueue(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i, i));
+        }
+        assertFalse(queue.offer(4, 4));
+        assertFalse(queue.offer(5, 5));
+        assertEquals(2, queue.getDropped());
+
+        // the events that fit are all still there, and draining makes room again
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, queue.drain((event, nanos) -> drained.add(event)));
+        assertEquals(List.of(0, 1, 2, 3), drained);
+        assertTrue(queue.offer(6, 6));
+        assertEquals(2, queue.getDropped());
+    }
+
+    @Test(timeout = 30000)
+    public void aConsumerThreadSeesEveryEventInOrder() throws InterruptedException {
+        int total = 200_000;
+        InputQueue queue = new InputQueue(64);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                while (!queue.offer(i, i)) {
+                    Thread.yield(); // lets the consumer run even on a single core
+                }
+            }
+        });
+        producer.start();
+
+        // the sink checks each event is the one after the last, and that its time came with it
+        int[] expected = new int[1];
+        boolean[] ordered = { true };
+        InputQueue.Sink sink = (event, nanos) -> {
+            ordered[0] &= event == expected[0] && nanos == event;
+            expected[0]++;
+        };
+        while (expected[0] < total) {
+            if (queue.drain(sink) == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertTrue(ordered[0]);
+        assertEquals(total, expected[0]);
+    }
+
+}
@@ -0,0 +1,187 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.Test;
+
+/**
+ * Tests that two NetSessions playing each other over loopback end up with exactly the same match, even when the
+ * network between them loses packets and delivers them out of order
+ */
+public class NetSessionTest {
+
+    private static final long SEED = 11; // seed of the match both sides play
+
+    @Test(timeout = 60000)
+    public void bothSidesFinishWithTheSameMatchOverALossyNetwork() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (DatagramChannel left = open(loopback); DatagramChannel right = open(loopback);
+                DatagramChannel toLeft = open(loopback); DatagramChannel toRight = open(loopback)) {
+            // each side talks to its own end of the relay, which passes packets on to the other side
+            left.connect(toLeft.getLocalAddress());
+            right.connect(toRight.getLocalAddress());
+            Relay relay = new Relay(toLeft, left.getLocalAddress(), toRight, right.getLocalAddress());
+            relay.start();
+
+            GameState leftState = new GameState(800, 600, 40, SEED);
+            GameState rightState = new GameState(800, 600, 40, SEED);
+            NetSession leftSession = new NetSession(leftState, 0, left);
+            NetSession rightSession = new NetSession(rightState, 1, right);
+            Player leftPlayer = new Player(leftSession, leftState, 1);
+            Player rightPlayer = new Player(rightSession, rightState, 2);
+            leftPlayer.start();
+            rightPlayer.start();
+            leftPlayer.join();
+            rightPlayer.join();
+            relay.interrupt();
+            relay.join();
+
+            if (leftPlayer.failure.get() != null) {
+                throw leftPlayer.failure.get();
+            }
+            if (rightPlayer.failure.get() != null) {
+                throw rightPlayer.failure.get();
+            }
+            assertTrue("the relay dropped packets", relay.dropped > 0);
+            assertTrue("the relay reordered packets", relay.reordered > 0);
+            assertTrue("a late input was rolled back", leftSession.getRollbacks() + rightSession.getRollbacks() > 0);
+            assertTrue(leftSession.isSettled());
+            assertTrue(rightSession.isSettled());
+            assertTrue(leftState.isOver());
+            assertArrayEquals(describe(leftState), describe(rightState));
+        }
+    }
+
+    /**
+     * @return a non-blocking channel bound to a free port on the loopback address
+     */
+    private static DatagramChannel open(InetAddress loopback) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(loopback, 0));
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    /**
+     * @return the tick count, every ship's position, score and hits, and every asteroid's x position
+     */
+    private static int[] describe(GameState state) {
+        Ship[] ships = state.getShips();
+        int size = state.getAsteroids().size();
+        int[] result = new int[1 + 4 * ships.length + size];
+        result[0] = (int) state.getTickCount();
+        for (int s = 0; s < ships.length; s++) {
+            result[1 + 4 * s] = ships[s].getX();
+            result[2 + 4 * s] = ships[s].getY();
+            result[3 + 4 * s] = ships[s].getScore();
+            result[4 + 4 * s] = ships[s].getHits();
+        }
+        int[] x = new int[size];
+        state.getAsteroids().saveX(x);
+        System.arraycopy(x, 0, result, 1 + 4 * ships.length, size);
+        return result;
+    }
+
+    /**
+     * Thread that plays one side's match to the end with random inputs, the way Race does without a window
+     */
+    private static class Player extends Thread {
+
+        private final NetSession session; // the side's session
+        private final GameState state; // the side's match
+        private final Rng inputs; // source of the side's inputs
+        private final AtomicReference<Exception> failure = new AtomicReference<>(); // what stopped the thread, if any
+
+        Player(NetSession session, GameState state, long seed) {
+            this.session = session;
+            this.state = state;
+            this.inputs = new Rng(seed);
+        }
+
+        @Override
+        public void run() {
+            try {
+                int input = -1;
+                while (!this.state.isOver() || !this.session.isSettled()) {
+                    if (input == -1) {
+                        input = (int) (this.inputs.nextDouble() * 3); // still, up or down
+                    }
+                    if (this.session.advance(input)) {
+                        input = -1;
+                    } else {
+                        LockSupport.parkNanos(100_000);
+                    }
+                }
+                this.session.finish(5_000_000_000L);
+            } catch (Exception e) {
+                this.failure.set(e);
+            }
+        }
+
+    }
+
+    /**
+     * Thread that passes packets between the two sides, dropping one in five and holding one in four back until the
+     * next packet in the same direction has gone past it
+     */
+    private static class Relay extends Thread {
+
+        private final DatagramChannel[] ends; // the relay's end of each side's connection
+        private final SocketAddress[] sides; // address of each side
+        private final ByteBuffer[] held = new ByteBuffer[2]; // packet held back in each direction, or null
+        private final Rng rng = new Rng(5); // decides which packets are dropped or held back
+        private int dropped; // packets dropped
+        private int reordered; // packets delivered after one sent later
+
+        Relay(DatagramChannel toLeft, SocketAddress left, DatagramChannel toRight, SocketAddress right) {
+            this.ends = new DatagramChannel[] { toLeft, toRight };
+            this.sides = new SocketAddress[] { left, right };
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer packet = ByteBuffer.allocate(1024);
+            try {
+                while (!this.isInterrupted()) {
+                    boolean moved = false;
+                    for (int from = 0; from < 2; from++) {
+                        int to = 1 - from;
+                        packet.clear();
+                        if (this.ends[from].receive(packet) == null) {
+                            continue;
+                        }
+                        moved = true;
+                        packet.flip();
+                        double roll = this.rng.nextDouble();
+                        if (roll < 0.2) {
+                            this.dropped++;
+                        } else if (roll < 0.45 && this.held[to] == null) {
+                            this.held[to] = ByteBuffer.allocate(packet.remaining()).put(packet).flip();
+                        } else {
+                            this.ends[to].send(packet, this.sides[to]);
+                            if (this.held[to] != null) {
+                                this.ends[to].send(this.held[to], this.sides[to]);
+                                this.held[to] = null;
+                                this.reordered++;
+                            }
+                        }
+                    }
+                    if (!moved) {
+                        LockSupport.parkNanos(50_000);
+                    }
+                }
+            } catch (IOException e) {
+                // a side closed its end, the test checks the result
+            }
+        }
+
+    }
+
+}
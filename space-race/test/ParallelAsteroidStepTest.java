@@ -0,0 +1,59 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Tests that a match played with its asteroids moved on a pool comes out exactly the same as on the calling thread,
+ * whatever the number of threads
+ */
+public class ParallelAsteroidStepTest {
+
+    private static final int ASTEROIDS = 2 * ParallelAsteroidStep.MIN_PARALLEL_ASTEROIDS; // big enough to be split
+    private static final int TICKS = 300; // ticks each match is played for
+
+    @Test
+    public void samePositionsAndScoresForEveryPoolSize() {
+        int[] single = play(null);
+        int hits = single[ASTEROIDS + 3] + single[ASTEROIDS + 7];
+        assertTrue("the ships are hit, so collisions are compared too", hits > 0);
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+        try {
+            assertArrayEquals(single, play(one));
+            assertArrayEquals(single, play(many));
+        } finally {
+            one.shutdown();
+            many.shutdown();
+        }
+    }
+
+    /**
+     * Plays TICKS ticks of the same match with the same inputs
+     * @param pool threads to move the asteroids on, or null for the calling thread
+     * @return every asteroid's x position, then each ship's x, y, score and hits
+     */
+    private static int[] play(ForkJoinPool pool) {
+        GameState state = new GameState(800, 600, ASTEROIDS, 42);
+        state.setPool(pool);
+        Rng inputs = new Rng(7);
+        for (int t = 0; t < TICKS; t++) {
+            state.setInputMask((int) (inputs.nextDouble() * 16));
+            state.tick();
+        }
+        int[] result = new int[ASTEROIDS + 8];
+        int[] x = new int[ASTEROIDS];
+        state.getAsteroids().saveX(x);
+        System.arraycopy(x, 0, result, 0, ASTEROIDS);
+        Ship[] ships = { state.getLeftShip(), state.getRightShip() };
+        for (int s = 0; s < ships.length; s++) {
+            result[ASTEROIDS + 4 * s] = ships[s].getX();
+            result[ASTEROIDS + 4 * s + 1] = ships[s].getY();
+            result[ASTEROIDS + 4 * s + 2] = ships[s].getScore();
+            result[ASTEROIDS + 4 * s + 3] = ships[s].getHits();
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,215 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that ScoreStore keeps every match and the right high scores through torn records, bad checkpoints,
+ * compaction and a game stopped part way through compacting
+ */
+public class ScoreStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(); // holds each test's logs
+
+    private final GameState state = new GameState(800, 600, 30, 1, GameState.MIN_MATCH_TICKS); // match saved
+
+    @Test
+    public void aTornLastRecordIsClearedAndWrittenOver() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("scores.log");
+        try (ScoreStore store = new ScoreStore(path)) {
+            this.append(store, 3);
+            assertFalse(store.wasTornRecordCleared());
+        }
+
+        // the start of a fourth record, as if the game was stopped while it was being written
+        byte[] log = Files.readAllBytes(path);
+        int torn = ScoreStore.HEADER_BYTES + 3 * ScoreStore.RECORD_BYTES;
+        for (int b = 0; b < 20; b++) {
+            log[torn + b] = (byte) (b + 1);
+        }
+        Files.write(path, log);
+
+        try (ScoreStore store = new ScoreStore(path)) {
+            assertTrue(store.wasTornRecordCleared());
+            assertEquals(3, store.getCount());
+        }
+        log = Files.readAllBytes(path);
+        for (int b = 0; b < ScoreStore.RECORD_BYTES; b++) {
+            assertEquals(0, log[torn + b]);
+        }
+        try (ScoreStore store = new ScoreStore(path)) {
+            assertFalse(store.wasTornRecordCleared());
+            assertEquals(3, this.save(store, 7, 4));
+        }
+        try (ScoreStore store = new ScoreStore(path)) {
+            assertEquals(4, store.getCount());
+            assertEquals(7, store.read(3).getScore(0));
+        }
+    }
+
+    @Test
+    public void aDamagedOrForeignCheckpointFallsBackToReadingTheWholeLog() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("scores.log");
+        Path index = path.resolveSibling("scores.log.idx");
+        try (ScoreStore store = new ScoreStore(path)) {
+            this.append(store, 40);
+        }
+        List<String> top;
+        try (ScoreStore store = new ScoreStore(path)) {
+            assertEquals("the checkpoint covers every match", 0, store.getScanned());
+            top = topScores(store);
+        }
+
+        byte[] damaged = Files.readAllBytes(index);
+        damaged[30] ^= 1;
+        Files.write(index, damaged);
+        try (ScoreStore store = new ScoreStore(path)) {
+            assertEquals(40, store.getScanned());
+            assertEquals(top, topScores(store));
+        }
+
+        // a whole checkpoint, but of another log with better scores
+        Path other = path.resolveSibling("other.log");
+        try (ScoreStore store = new ScoreStore(other)) {
+            for (int m = 0; m < 50; m++) {
+                this.save(store, 1000 + m, 0);
+            }
+        }
+        Files.copy(other.resolveSibling("other.log.idx"), index, StandardCopyOption.REPLACE_EXISTING);
+        try (ScoreStore store = new ScoreStore(path)) {
+            assertEquals(40, store.getScanned());
+            assertEquals(top, topScores(store));
+        }
+    }
+
+    @Test
+    public void compactionKeepsTheHighScoresAndTheNewestMatches() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("scores.log");
+        List<String> top;
+        Set<Long> kept = new HashSet<>();
+        try (ScoreStore store = new ScoreStore(path, 100)) {
+            this.append(store, 150);
+            top = topScores(store);
+            for (int r = 0; r < store.getTopCount(); r++) {
+                kept.add(store.read(store.getTopMatch(r)).getEndedAt());
+            }
+            for (long m = 100; m < 150; m++) {
+                kept.add(store.read(m).getEndedAt());
+            }
+        } // closing a log past its limit of 100 compacts it down to the newest 50 and the high scores
+
+        try (ScoreStore store = new ScoreStore(path, 100)) {
+            assertEquals(kept.size(), store.getCount());
+            assertEquals(top, topScores(store));
+            long last = -1;
+            for (long m = 0; m < store.getCount(); m++) {
+                long endedAt = store.read(m).getEndedAt();
+                assertTrue("matches stay in the order they were played", endedAt > last);
+                assertTrue(kept.contains(endedAt));
+                last = endedAt;
+            }
+            assertEquals(149, last);
+        }
+    }
+
+    @Test
+    public void aGameStoppedPartWayThroughCompactingLosesNoMatch() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("scores.log");
+        Path index = path.resolveSibling("scores.log.idx");
+        try (ScoreStore store = new ScoreStore(path)) {
+            this.append(store, 60);
+        }
+        byte[] before = Files.readAllBytes(path);
+        Set<Long> kept = new HashSet<>();
+        try (ScoreStore store = new ScoreStore(path)) {
+            store.compact(20);
+            for (long m = 0; m < store.getCount(); m++) {
+                kept.add(store.read(m).getEndedAt());
+            }
+        }
+        byte[] after = Files.readAllBytes(path);
+        assertTrue(kept.size() > 20 && kept.size() < 60);
+
+        // compacting writes each record in turn from the first, so stopping after any number of them leaves the records
+        // before it as they are after compacting, and the header and the records from it on as they were before
+        for (int written = 0; written <= 60; written++) {
+            byte[] stopped = before.clone();
+            int end = ScoreStore.HEADER_BYTES + written * ScoreStore.RECORD_BYTES;
+            System.arraycopy(after, ScoreStore.HEADER_BYTES, stopped, ScoreStore.HEADER_BYTES,
+                    end - ScoreStore.HEADER_BYTES);
+            Files.write(path, stopped);
+            Files.deleteIfExists(index); // the first thing compacting does
+            try (ScoreStore store = new ScoreStore(path)) {
+                Set<Long> found = new HashSet<>();
+                for (long m = 0; m < store.getCount(); m++) {
+                    found.add(store.read(m).getEndedAt());
+                }
+                assertTrue("every kept match is there after stopping at record " + written, found.containsAll(kept));
+            }
+        }
+    }
+
+    @Test
+    public void aSecondOpenOfTheSameLogIsRefused() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("scores.log");
+        try (ScoreStore store = new ScoreStore(path)) {
+            this.append(store, 2);
+            try {
+                new ScoreStore(path.resolveSibling(".").resolve("scores.log"));
+                fail("the log was opened twice");
+            } catch (IOException e) {
+                // expected, and the first store is still usable
+            }
+            this.append(store, 1);
+        }
+        try (ScoreStore store = new ScoreStore(path)) {
+            assertEquals(3, store.getCount());
+        }
+    }
+
+    /**
+     * Saves matches with uneven scores, ending at the times 0, 1, 2 and on after the matches already in the store
+     */
+    private void append(ScoreStore store, int matches) throws IOException {
+        for (int m = 0; m < matches; m++) {
+            long at = store.getCount();
+            this.save(store, (int) (at * 37 % 101), (int) (at * 53 % 89));
+        }
+    }
+
+    /**
+     * Saves a match with the given scores, ending at the time of its index in the store
+     * @return index of the match
+     */
+    private long save(ScoreStore store, int left, int right) throws IOException {
+        this.state.getShip(0).setScore(left);
+        this.state.getShip(1).setScore(right);
+        return store.append(this.state, store.getCount());
+    }
+
+    /**
+     * @return the high scores, each as its score, the time its match ended and its ship
+     */
+    private static List<String> topScores(ScoreStore store) {
+        List<String> top = new ArrayList<>();
+        for (int r = 0; r < store.getTopCount(); r++) {
+            top.add(store.getTopScore(r) + "@" + store.read(store.getTopMatch(r)).getEndedAt() + "/"
+                    + store.getTopShip(r));
+        }
+        return top;
+    }
+
+}